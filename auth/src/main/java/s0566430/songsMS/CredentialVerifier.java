@@ -0,0 +1,156 @@
+package s0566430.songsMS;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import s0566430.songsMS.model.User;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.persistence.PersistenceException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Verifies login credentials against the stored password hashes.
+ * Hashes are computed on a bounded worker pool, so bursts of logins queue up there instead of occupying all request threads;
+ * if the queue is full or the verification takes too long, a {@link RejectedExecutionException} is thrown.
+ * Successful verifications are cached for a short time, keyed by a keyed hash of user id and password.
+ * Legacy plaintext passwords and hashes with an outdated work factor are rehashed after a successful login.
+ */
+@Component
+public class CredentialVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialVerifier.class);
+
+    private static final class CachedVerification {
+        final String storedPassword;
+        final long expiresAt;
+
+        CachedVerification(String storedPassword, long expiresAt) {
+            this.storedPassword = storedPassword;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final UserDao dao;
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final long cacheTtlMillis;
+    private final Map<String, CachedVerification> cache;
+    private final ThreadLocal<Mac> cacheKeyMac;
+
+    @Autowired
+    public CredentialVerifier(@Qualifier("userDaoImpl") UserDao dao, PasswordHasher hasher,
+                              @Value("${auth.password.hash-threads:0}") int threads,
+                              @Value("${auth.password.hash-queue-size:100}") int queueSize,
+                              @Value("${auth.password.hash-timeout-millis:5000}") long timeoutMillis,
+                              @Value("${auth.password.cache-ttl-seconds:60}") long cacheTtlSeconds,
+                              @Value("${auth.password.cache-max-size:10000}") int cacheMaxSize) {
+        this.dao = dao;
+        this.hasher = hasher;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.timeoutMillis = timeoutMillis;
+        this.cacheTtlMillis = cacheTtlSeconds * 1000;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedVerification> eldest) {
+                return size() > cacheMaxSize;
+            }
+        };
+        // cache keys must not reveal passwords, so they are derived with a key that only lives in this process
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKeyMac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(key, "HmacSHA256"));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**@param user the user as stored in the database
+     * @param password the password given at login
+     * @throws RejectedExecutionException if the hashing pool is saturated
+     */
+    public boolean verify(User user, String password) throws RejectedExecutionException {
+        String cacheKey = cacheKey(user.getUserId(), password);
+        String storedPassword = user.getPassword();
+        synchronized (cache) {
+            CachedVerification cached = cache.get(cacheKey);
+            if (cached != null && cached.expiresAt > System.currentTimeMillis() && cached.storedPassword.equals(storedPassword))
+                return true;
+        }
+
+        Future<Boolean> verification = executor.submit(() -> {
+            if (!hasher.verify(password, storedPassword))
+                return false;
+            if (hasher.needsRehash(storedPassword)) {
+                String rehashed = hasher.hash(password);
+                try {
+                    dao.updatePassword(user.getUserId(), rehashed);
+                    user.setPassword(rehashed);
+                } catch (PersistenceException e) {
+                    // the credentials are valid, the rehash is tried again at the next login
+                    LOG.warn("could not rehash the password of user {}", user.getUserId(), e);
+                }
+            }
+            return true;
+        });
+        boolean valid = await(verification);
+        if (valid) {
+            synchronized (cache) {
+                cache.put(cacheKey, new CachedVerification(user.getPassword(), System.currentTimeMillis() + cacheTtlMillis));
+            }
+        }
+        return valid;
+    }
+
+    private boolean await(Future<Boolean> verification) {
+        try {
+            return verification.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            verification.cancel(true);
+            throw new RejectedExecutionException("password verification timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String cacheKey(String userId, String password) {
+        byte[] digest = cacheKeyMac.get().doFinal((userId + '\0' + password).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    public int getQueuedVerifications() {
+        return executor.getQueue().size();
+    }
+}
@@ -0,0 +1,126 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import s0566430.songsMS.model.Token;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link TokenStore} backed by the <code>tokens</code> table of the auth database, so that all auth instances
+ * connected to the same database accept the tokens issued by any of them.
+ * To save a write per lookup, the sliding expiry is only extended once less than half of the ttl is left.
+ * Expired tokens are deleted by a background sweeper, every instance sweeps on its own.
+ * The maximum size is enforced by the sweeper as well, so that logins do not count the table: between two sweeps
+ * the store can grow beyond it by the logins of one interval, then the tokens expiring first are evicted.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.token-store.type", havingValue = "database")
+public class DatabaseTokenStore implements TokenStore {
+
+    private final TokenDao dao;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final long sweepIntervalSeconds;
+    private final LongSupplier clock;
+    private final TokenStoreMetrics metrics;
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public DatabaseTokenStore(TokenDao dao,
+                              @Value("${auth.token-store.ttl-seconds:1800}") long ttlSeconds,
+                              @Value("${auth.token-store.max-size:100000}") int maxSize,
+                              @Value("${auth.token-store.sweep-interval-seconds:60}") long sweepIntervalSeconds) {
+        this(dao, ttlSeconds * 1000, maxSize, sweepIntervalSeconds, System::currentTimeMillis);
+    }
+
+    DatabaseTokenStore(TokenDao dao, long ttlMillis, int maxSize, long sweepIntervalSeconds, LongSupplier clock) {
+        this.dao = dao;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+        this.clock = clock;
+        this.metrics = new TokenStoreMetrics(clock);
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    @Override
+    public boolean put(String token, String userId) {
+        return dao.saveToken(new Token(token, userId, clock.getAsLong() + ttlMillis));
+    }
+
+    @Override
+    public String get(String token) {
+        metrics.lookup();
+        Token result = dao.findToken(token);
+        if (result == null) return null;
+        long now = clock.getAsLong();
+        if (result.getExpiresAt() <= now) {
+            dao.deleteToken(token);
+            metrics.expired(1);
+            return null;
+        }
+        if (result.getExpiresAt() - now < ttlMillis / 2)
+            dao.updateExpiry(token, now + ttlMillis);
+        return result.getUserId();
+    }
+
+    @Override
+    public void remove(String token) {
+        dao.deleteToken(token);
+    }
+
+    /** removes expired tokens, evicts the tokens expiring first beyond the maximum size and updates the lookup rate */
+    void sweep() {
+        metrics.expired(dao.deleteTokensExpiredBefore(clock.getAsLong()));
+        long surplus = dao.countTokens() - maxSize;
+        if (surplus > 0) metrics.evicted(dao.deleteTokensExpiringFirst((int) Math.min(surplus, Integer.MAX_VALUE)));
+        metrics.sample();
+    }
+
+    @Override
+    public long getLiveTokens() {
+        return dao.countTokens();
+    }
+
+    @Override
+    public long getEvictions() {
+        return metrics.getEvictions();
+    }
+
+    @Override
+    public long getExpirations() {
+        return metrics.getExpirations();
+    }
+
+    @Override
+    public long getLookups() {
+        return metrics.getLookups();
+    }
+
+    @Override
+    public double getLookupsPerSecond() {
+        return metrics.getLookupsPerSecond();
+    }
+}
@@ -0,0 +1,190 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe in-memory {@link TokenStore}.
+ * Tokens expire after not being used for the configured time (sliding expiry) and are removed by a background sweeper.
+ * If the store is full, a token that has not been used recently is evicted: tokens are visited in the order they were
+ * stored and a token that has been used since its last visit gets a second chance (CLOCK approximation of LRU),
+ * so an eviction takes constant time on average instead of a scan of all tokens.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.token-store.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryTokenStore implements TokenStore {
+
+    private static final class Entry {
+        final String userId;
+        volatile long expiresAt;
+        /** set on every lookup, cleared when the eviction passes the token */
+        volatile boolean used;
+
+        Entry(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+    /** the stored tokens in eviction order, tokens removed otherwise are skipped when they come up */
+    private final Queue<String> evictionOrder = new ConcurrentLinkedQueue<>();
+    /** the stored tokens including reserved places, never exceeds the maximum size */
+    private final AtomicInteger size = new AtomicInteger();
+    private final long ttlMillis;
+    private final int maxSize;
+    private final long sweepIntervalSeconds;
+    private final LongSupplier clock;
+    private final TokenStoreMetrics metrics;
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public InMemoryTokenStore(@Value("${auth.token-store.ttl-seconds:1800}") long ttlSeconds,
+                              @Value("${auth.token-store.max-size:100000}") int maxSize,
+                              @Value("${auth.token-store.sweep-interval-seconds:60}") long sweepIntervalSeconds) {
+        this(ttlSeconds * 1000, maxSize, sweepIntervalSeconds, System::currentTimeMillis);
+    }
+
+    InMemoryTokenStore(long ttlMillis, int maxSize, long sweepIntervalSeconds, LongSupplier clock) {
+        // put waits for a free place, which a store without places never has
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("auth.token-store.max-size must be positive: " + maxSize);
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+        this.clock = clock;
+        this.metrics = new TokenStoreMetrics(clock);
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    @Override
+    public boolean put(String token, String userId) {
+        // the place is reserved before storing, so that concurrent logins cannot exceed the maximum size
+        while (true) {
+            int current = size.get();
+            if (current < maxSize) {
+                if (size.compareAndSet(current, current + 1)) break;
+            } else if (!evict()) {
+                // the other places are reserved but not filled yet
+                Thread.onSpinWait();
+            }
+        }
+        if (tokens.putIfAbsent(token, new Entry(userId, clock.getAsLong() + ttlMillis)) != null) {
+            size.decrementAndGet();
+            return false;
+        }
+        evictionOrder.add(token);
+        return true;
+    }
+
+    @Override
+    public String get(String token) {
+        metrics.lookup();
+        Entry entry = tokens.get(token);
+        if (entry == null) return null;
+        long now = clock.getAsLong();
+        if (entry.expiresAt <= now) {
+            if (remove(token, entry)) metrics.expired(1);
+            return null;
+        }
+        entry.expiresAt = now + ttlMillis;
+        if (!entry.used) entry.used = true;
+        return entry.userId;
+    }
+
+    @Override
+    public void remove(String token) {
+        Entry entry = tokens.get(token);
+        if (entry != null) remove(token, entry);
+    }
+
+    /** removes expired tokens and tokens removed otherwise from the eviction order and updates the lookup rate */
+    void sweep() {
+        long now = clock.getAsLong();
+        tokens.forEach((token, entry) -> {
+            if (entry.expiresAt <= now && remove(token, entry)) metrics.expired(1);
+        });
+        evictionOrder.removeIf(token -> !tokens.containsKey(token));
+        metrics.sample();
+    }
+
+    /**@return false if there was no token to evict
+     */
+    private boolean evict() {
+        for (String token; (token = evictionOrder.poll()) != null; ) {
+            Entry entry = tokens.get(token);
+            if (entry == null) continue;
+            if (entry.expiresAt <= clock.getAsLong()) {
+                if (remove(token, entry)) metrics.expired(1);
+                return true;
+            }
+            if (entry.used) {
+                entry.used = false;
+                evictionOrder.add(token);
+                continue;
+            }
+            if (remove(token, entry)) metrics.evicted(1);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean remove(String token, Entry entry) {
+        if (!tokens.remove(token, entry)) return false;
+        size.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public long getLiveTokens() {
+        return tokens.size();
+    }
+
+    @Override
+    public long getEvictions() {
+        return metrics.getEvictions();
+    }
+
+    @Override
+    public long getExpirations() {
+        return metrics.getExpirations();
+    }
+
+    @Override
+    public long getLookups() {
+        return metrics.getLookups();
+    }
+
+    @Override
+    public double getLookupsPerSecond() {
+        return metrics.getLookupsPerSecond();
+    }
+}
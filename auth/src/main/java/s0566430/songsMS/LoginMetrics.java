@@ -0,0 +1,57 @@
+package s0566430.songsMS;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and throughput of the login endpoint.
+ */
+public class LoginMetrics {
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public enum Outcome { SUCCESS, FAILURE, REJECTED }
+
+    void record(Outcome outcome, long latencyNanos) {
+        logins.increment();
+        if (outcome == Outcome.FAILURE) failures.increment();
+        else if (outcome == Outcome.REJECTED) rejections.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public long getLogins() {
+        return logins.sum();
+    }
+
+    /**@return logins that were declined because of wrong credentials or invalid requests */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**@return logins that were declined because the password hashing pool was saturated */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public double getAverageLatencyMillis() {
+        long count = logins.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    /**@return average logins per second since startup */
+    public double getLoginsPerSecond() {
+        long elapsed = System.nanoTime() - startedAt;
+        return elapsed == 0 ? 0 : logins.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+}
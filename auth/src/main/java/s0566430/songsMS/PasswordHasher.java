@@ -0,0 +1,85 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Hashes passwords with PBKDF2-HMAC-SHA256. Hashes are stored as <code>pbkdf2$iterations$salt$hash</code>,
+ * so the work factor (<code>auth.password.iterations</code>) can be raised without invalidating existing hashes.
+ * Stored passwords without that prefix are legacy plaintext passwords.
+ */
+@Component
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+
+    public PasswordHasher(@Value("${auth.password.iterations:310000}") int iterations) {
+        this.iterations = iterations;
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + encoder.encodeToString(salt) + '$' + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**@return <code>false</code> also if the stored hash is malformed, e.g. truncated
+     */
+    public boolean verify(String password, String stored) {
+        if (!isHashed(stored))
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+        String[] parts = stored.split("\\$", -1);
+        if (parts.length != 4)
+            return false;
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            storedIterations = Integer.parseInt(parts[1]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            salt = decoder.decode(parts[2]);
+            expected = decoder.decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (storedIterations <= 0 || salt.length == 0 || expected.length != HASH_LENGTH / 8)
+            return false;
+        return MessageDigest.isEqual(expected, pbkdf2(password, salt, storedIterations));
+    }
+
+    /**@return <code>true</code> if the stored password is plaintext or has been hashed with a different work factor
+     */
+    public boolean needsRehash(String stored) {
+        return !isHashed(stored) || !stored.startsWith(PREFIX + iterations + '$');
+    }
+
+    private static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package s0566430.songsMS;
+
+import s0566430.songsMS.model.Token;
+
+import javax.persistence.PersistenceException;
+
+public interface TokenDao {
+
+    /**@return <code>false</code> if a token with the same value already exists, also if it has been stored
+     * by another instance at the same time
+     */
+    boolean saveToken(Token token) throws PersistenceException;
+
+    /**@param token the token value
+     * @return the Token object corresponding to the value from the database or <code>null</code> if it is unknown
+     */
+    Token findToken(String token) throws PersistenceException;
+
+    void updateExpiry(String token, long expiresAt) throws PersistenceException;
+
+    void deleteToken(String token) throws PersistenceException;
+
+    /**@return the number of deleted tokens
+     */
+    int deleteTokensExpiredBefore(long time) throws PersistenceException;
+
+    /**@return the number of deleted tokens
+     */
+    int deleteTokensExpiringFirst(int count) throws PersistenceException;
+
+    long countTokens() throws PersistenceException;
+}
@@ -0,0 +1,104 @@
+package s0566430.songsMS;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import s0566430.songsMS.model.Token;
+
+import javax.persistence.PersistenceException;
+import java.util.List;
+
+@Repository
+@Transactional
+public class TokenDaoImpl implements TokenDao {
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Override
+    public boolean saveToken(Token token) throws PersistenceException {
+        try {
+            // the primary key decides, a lookup before the insert would not stop another instance inserting in between
+            Session s = sessionFactory.getCurrentSession();
+            s.save(token);
+            s.flush();
+            return true;
+        } catch (PersistenceException e) {
+            if (e.getCause() instanceof ConstraintViolationException) return false;
+            throw e;
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public Token findToken(String token) throws PersistenceException {
+        try {
+            return sessionFactory.getCurrentSession().get(Token.class, token);
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public void updateExpiry(String token, long expiresAt) throws PersistenceException {
+        try {
+            sessionFactory.getCurrentSession().createQuery("UPDATE Token t SET t.expiresAt = :expiresAt WHERE t.token = :token")
+                    .setParameter("expiresAt", expiresAt)
+                    .setParameter("token", token)
+                    .executeUpdate();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public void deleteToken(String token) throws PersistenceException {
+        try {
+            sessionFactory.getCurrentSession().createQuery("DELETE FROM Token t WHERE t.token = :token")
+                    .setParameter("token", token)
+                    .executeUpdate();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public int deleteTokensExpiredBefore(long time) throws PersistenceException {
+        try {
+            return sessionFactory.getCurrentSession().createQuery("DELETE FROM Token t WHERE t.expiresAt <= :time")
+                    .setParameter("time", time)
+                    .executeUpdate();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public int deleteTokensExpiringFirst(int count) throws PersistenceException {
+        try {
+            Session s = sessionFactory.getCurrentSession();
+            List<String> tokens = s.createQuery("SELECT t.token FROM Token t ORDER BY t.expiresAt", String.class)
+                    .setMaxResults(count)
+                    .getResultList();
+            if (tokens.isEmpty()) return 0;
+            return s.createQuery("DELETE FROM Token t WHERE t.token IN (:tokens)")
+                    .setParameterList("tokens", tokens)
+                    .executeUpdate();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public long countTokens() throws PersistenceException {
+        try {
+            return sessionFactory.getCurrentSession().createQuery("SELECT count(t) FROM Token t", Long.class).getSingleResult();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+}
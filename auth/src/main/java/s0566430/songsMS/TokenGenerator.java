@@ -0,0 +1,38 @@
+package s0566430.songsMS;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates random opaque tokens consisting of ascii letters and digits.
+ * Random bytes are drawn in bulk from a single shared {@link SecureRandom} and mapped directly onto the alphabet.
+ */
+public class TokenGenerator {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int length;
+
+    public TokenGenerator() {
+        this(20);
+    }
+
+    public TokenGenerator(int length) {
+        this.length = length;
+    }
+
+    public String generate() {
+        char[] token = new char[length];
+        // the lowest 6 bits of a byte are uniformly distributed over 0-63, values outside the alphabet (62, 63) are skipped
+        byte[] bytes = new byte[length + length / 8 + 4];
+        int filled = 0;
+        while (filled < length) {
+            RANDOM.nextBytes(bytes);
+            for (int i = 0; i < bytes.length && filled < length; i++) {
+                int index = bytes[i] & 0x3F;
+                if (index < ALPHABET.length) token[filled++] = ALPHABET[index];
+            }
+        }
+        return new String(token);
+    }
+}
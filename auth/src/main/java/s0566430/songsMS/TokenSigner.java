@@ -0,0 +1,85 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Issues and verifies self-contained tokens of the form <code>payload.signature</code>, where the payload
+ * carries the user id and expiry and the signature is an HMAC-SHA256 over the payload.
+ * Services sharing the secret (<code>auth.token.secret</code>) can verify these tokens without calling the auth service.
+ * Signing is disabled if no secret is configured.
+ */
+@Component
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final ThreadLocal<Mac> mac;
+
+    public TokenSigner(@Value("${auth.token.secret:}") String secret, @Value("${auth.token.ttl-seconds:3600}") long ttlSeconds) {
+        this.key = secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttlMillis = ttlSeconds * 1000;
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /** signed tokens contain a '.', opaque tokens only consist of letters and digits */
+    public static boolean isSignedToken(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    public String sign(String userId) {
+        if (!isEnabled())
+            throw new IllegalStateException("no token secret configured");
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        String payload = ENCODER.encodeToString((expiresAt + ":" + userId).getBytes(StandardCharsets.UTF_8));
+        return payload + '.' + ENCODER.encodeToString(signature(payload));
+    }
+
+    /**@param token a token issued by {@link #sign(String)}
+     * @return the user id contained in the token or <code>null</code> if the signature is invalid or the token has expired
+     */
+    public String verify(String token) {
+        if (!isEnabled() || !isSignedToken(token)) return null;
+        int separator = token.indexOf('.');
+        String payload = token.substring(0, separator);
+        try {
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, signature(payload)))
+                return null;
+            String content = new String(DECODER.decode(payload), StandardCharsets.UTF_8);
+            int colon = content.indexOf(':');
+            if (Long.parseLong(content.substring(0, colon)) <= System.currentTimeMillis())
+                return null;
+            return content.substring(colon + 1);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private byte[] signature(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
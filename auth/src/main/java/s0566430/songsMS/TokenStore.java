@@ -0,0 +1,32 @@
+package s0566430.songsMS;
+
+/**
+ * Stores the opaque tokens issued at login. Tokens expire after not being used for a configured time.
+ * The implementation is selected with <code>auth.token-store.type</code>:
+ * <code>memory</code> (default) keeps tokens in the heap of a single auth instance,
+ * <code>database</code> keeps them in the auth database so that multiple auth instances can share them.
+ */
+public interface TokenStore {
+
+    /**@return <code>false</code> if the token is already in use, in which case nothing is stored
+     */
+    boolean put(String token, String userId);
+
+    /**@return the id of the user the token has been issued to or <code>null</code> if the token is unknown or expired
+     */
+    String get(String token);
+
+    void remove(String token);
+
+    long getLiveTokens();
+
+    long getEvictions();
+
+    long getExpirations();
+
+    long getLookups();
+
+    /**@return the lookup rate between the last two sweeps
+     */
+    double getLookupsPerSecond();
+}
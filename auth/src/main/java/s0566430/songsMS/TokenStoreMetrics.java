@@ -0,0 +1,61 @@
+package s0566430.songsMS;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters shared by the {@link TokenStore} implementations.
+ */
+class TokenStoreMetrics {
+
+    private final LongSupplier clock;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private long lastSampleAt;
+    private long lookupsAtLastSample;
+    private volatile double lookupsPerSecond;
+
+    TokenStoreMetrics(LongSupplier clock) {
+        this.clock = clock;
+        this.lastSampleAt = clock.getAsLong();
+    }
+
+    void lookup() {
+        lookups.increment();
+    }
+
+    void evicted(long count) {
+        evictions.add(count);
+    }
+
+    void expired(long count) {
+        expirations.add(count);
+    }
+
+    /** updates the lookup rate with the lookups since the last sample */
+    synchronized void sample() {
+        long now = clock.getAsLong();
+        long totalLookups = lookups.sum();
+        if (now > lastSampleAt)
+            lookupsPerSecond = (totalLookups - lookupsAtLastSample) * 1000.0 / (now - lastSampleAt);
+        lastSampleAt = now;
+        lookupsAtLastSample = totalLookups;
+    }
+
+    long getLookups() {
+        return lookups.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    long getExpirations() {
+        return expirations.sum();
+    }
+
+    double getLookupsPerSecond() {
+        return lookupsPerSecond;
+    }
+}
@@ -2,6 +2,7 @@ package s0566430.songsMS;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -13,46 +14,61 @@ import javax.persistence.PersistenceException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 //@RequestMapping(value = "/auth")
 public class UserController {
 
     private UserDao dao;
-    private ObjectMapper mapper = new ObjectMapper();
+    private TokenSigner tokenSigner;
+    /** maps tokens to users */
+    private TokenStore tokenStore;
+    private CredentialVerifier credentialVerifier;
+    /** built once for User, so the type is not resolved per login */
+    private ObjectReader userReader = new ObjectMapper().readerFor(User.class);
+    private TokenGenerator tokenGenerator = new TokenGenerator();
+    private LoginMetrics loginMetrics = new LoginMetrics();
 
-    /** maps tokens to userId */
-    HashMap<String, User> tokenMap = new HashMap<>();
-
-    public UserController(@Qualifier("userDaoImpl") UserDao dao){
+    public UserController(@Qualifier("userDaoImpl") UserDao dao, TokenSigner tokenSigner, TokenStore tokenStore, CredentialVerifier credentialVerifier){
         this.dao = dao;
+        this.tokenSigner = tokenSigner;
+        this.tokenStore = tokenStore;
+        this.credentialVerifier = credentialVerifier;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> login(@RequestBody String userJson) throws IOException {
+        long start = System.nanoTime();
+        ResponseEntity<String> response = authenticate(userJson);
+        LoginMetrics.Outcome outcome;
+        if (response.getStatusCode().is2xxSuccessful()) outcome = LoginMetrics.Outcome.SUCCESS;
+        else if (response.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) outcome = LoginMetrics.Outcome.REJECTED;
+        else outcome = LoginMetrics.Outcome.FAILURE;
+        loginMetrics.record(outcome, System.nanoTime() - start);
+        return response;
+    }
+
+    private ResponseEntity<String> authenticate(String userJson) throws IOException {
         try {
             // check for illegal arguments
             if (userJson.toLowerCase().contains("\"firstname\":") || userJson.toLowerCase().contains("\"lastname\":"))
                 return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body("Wrong request arguments.");
             // create non persisted user
-            User user = mapper.readValue(userJson, User.class);
+            User user = userReader.readValue(userJson);
             // check for needed arguments
             if (user.getUserId() == null || user.getPassword() == null)
                 return ResponseEntity.badRequest().body("fields 'userId' and 'password' must be defined");
             // find fitting user by id
             User existingUser = dao.findUser(user.getUserId());
-            if (existingUser != null && existingUser.getPassword().equals(user.getPassword())) {
-                // generate token, put it in hashmap and request that for return body
+            if (existingUser != null && credentialVerifier.verify(existingUser, user.getPassword())) {
+                // signed tokens are self-contained and don't need to be stored
+                if (tokenSigner.isEnabled())
+                    return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.TEXT_PLAIN).body(tokenSigner.sign(existingUser.getUserId()));
+                // generate token, put it in the token store and request that for return body
                 String token;
-                while (true) { // generate new token if not unique
-                    token = generateResponseToken();
-                    if (tokenMap.containsKey(token))
-                        continue;
-                    break;
-                }
-                tokenMap.put(token, existingUser);
+                do token = generateResponseToken();
+                while (!tokenStore.put(token, existingUser.getUserId())); // generate new token if not unique
                 return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.TEXT_PLAIN).body(token);
             } else {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).contentType(MediaType.TEXT_PLAIN).body("Declined: User and password don't match or user doesn't exist!");
@@ -61,17 +77,25 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(getStackTrace(e));
         } catch (JsonProcessingException | IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(getStackTrace(e));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.TEXT_PLAIN).body("Too many logins, please try again later.");
         }
     }
 
-    @GetMapping(value = "/{token}")
+    // signed tokens contain a dot, which must not be treated as a file extension
+    @GetMapping(value = "/{token:.+}")
     public ResponseEntity<String> getUserIdForToken(@PathVariable String token) {
-        User result = tokenMap.get(token);
-        if (result == null) {
+        String userId;
+        if (TokenSigner.isSignedToken(token)) {
+            userId = tokenSigner.verify(token);
+        } else {
+            userId = tokenStore.get(token);
+        }
+        if (userId == null) {
             return ResponseEntity.notFound().build();
         }
         else {
-            return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.TEXT_PLAIN).body(result.getUserId());
+            return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.TEXT_PLAIN).body(userId);
         }
     }
 
@@ -84,13 +108,11 @@ public class UserController {
     }
 
     String generateResponseToken() {
-        char[] array = new char[20];
-        for (int i=0; i<array.length; i++) {
-            // fill array with random ascii letters and digits
-            do array[i] = (char) new Random().nextInt(127);
-            while (!Character.isLetterOrDigit(array[i]));
-        }
-        return new String(array);
+        return tokenGenerator.generate();
+    }
+
+    public LoginMetrics getLoginMetrics() {
+        return loginMetrics;
     }
 
     static String getStackTrace(Throwable t) {
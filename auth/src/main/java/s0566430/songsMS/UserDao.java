@@ -10,4 +10,8 @@ public interface UserDao {
      * @return the s0566430.songsMS.model.User object corresponding to the user id from the database or <code>null</code> if the given id is unassigned
      */
     User findUser(String userId) throws PersistenceException;
+
+    /**@param password the new password hash
+     */
+    void updatePassword(String userId, String password) throws PersistenceException;
 }
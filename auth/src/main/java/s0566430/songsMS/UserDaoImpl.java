@@ -23,4 +23,16 @@ public class UserDaoImpl implements UserDao{
             throw new PersistenceException(e);
         }
     }
+
+    @Override
+    public void updatePassword(String userId, String password) throws PersistenceException {
+        try {
+            sessionFactory.getCurrentSession().createQuery("UPDATE User u SET u.password = :password WHERE u.userId = :userId")
+                    .setParameter("password", password)
+                    .setParameter("userId", userId)
+                    .executeUpdate();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
 }
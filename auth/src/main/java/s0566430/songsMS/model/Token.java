@@ -0,0 +1,53 @@
+package s0566430.songsMS.model;
+
+import com.sun.istack.NotNull;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "tokens", indexes = @Index(name = "tokens_expiresat_idx", columnList = "expiresAt"))
+public class Token {
+    @Id
+    @NotNull
+    private String token;
+    @NotNull
+    private String userId;
+    @NotNull
+    private long expiresAt;
+
+    public Token() {
+    }
+
+    public Token(String token, String userId, long expiresAt) {
+        this.token = token;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
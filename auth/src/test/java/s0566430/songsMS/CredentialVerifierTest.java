@@ -0,0 +1,115 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import s0566430.songsMS.model.User;
+
+import javax.persistence.PersistenceException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class CredentialVerifierTest {
+
+    private UserDao dao;
+    private PasswordHasher hasher;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        dao = Mockito.mock(UserDao.class);
+        hasher = Mockito.spy(new PasswordHasher(1000));
+        user = new User("mmuster", hasher.hash("pass1234"), "Maxime", "Muster");
+    }
+
+    @Test
+    void verify_successfulVerificationIsCached() {
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 10, 5000, 60, 100);
+
+        assertTrue(verifier.verify(user, "pass1234"));
+        assertTrue(verifier.verify(user, "pass1234"));
+        assertFalse(verifier.verify(user, "geheim"));
+        assertFalse(verifier.verify(user, "geheim"));
+
+        Mockito.verify(hasher, Mockito.times(1)).verify("pass1234", user.getPassword());
+        Mockito.verify(hasher, Mockito.times(2)).verify("geheim", user.getPassword());
+    }
+
+    @Test
+    void verify_cacheIgnoredAfterPasswordChange() {
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 10, 5000, 60, 100);
+
+        assertTrue(verifier.verify(user, "pass1234"));
+        user.setPassword(hasher.hash("geheim"));
+        assertFalse(verifier.verify(user, "pass1234"));
+    }
+
+    @Test
+    void verify_malformedHash() {
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 10, 5000, 60, 100);
+        String hash = user.getPassword();
+
+        for (String malformed : new String[]{"pbkdf2$", "pbkdf2$1000$", hash.substring(0, hash.lastIndexOf('$')),
+                hash.substring(0, hash.length() - 4), hash.replace("pbkdf2$1000$", "pbkdf2$x$"),
+                hash.replace("pbkdf2$1000$", "pbkdf2$0$"), hash + "$extra", hash.substring(0, hash.length() - 1) + "!"}) {
+            user.setPassword(malformed);
+            assertFalse(verifier.verify(user, "pass1234"), malformed);
+        }
+        Mockito.verifyNoInteractions(dao);
+    }
+
+    @Test
+    void verify_failedRehashDoesNotFailLogin() {
+        Mockito.doThrow(new PersistenceException("connection lost")).when(dao).updatePassword(anyString(), anyString());
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 10, 5000, 60, 100);
+        user.setPassword("pass1234");
+
+        assertTrue(verifier.verify(user, "pass1234"));
+        assertEquals("pass1234", user.getPassword());
+        Mockito.verify(dao).updatePassword(Mockito.eq("mmuster"), anyString());
+    }
+
+    @Test
+    void verify_rejectedWhenPoolSaturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(hasher).verify(anyString(), anyString());
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 1, 5000, 60, 100);
+        User otherUser = new User("other", user.getPassword(), "Erika", "Muster");
+
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+        Future<Boolean> running = requests.submit(() -> verifier.verify(user, "pass1234"));
+        started.await();
+        Future<Boolean> queued = requests.submit(() -> verifier.verify(otherUser, "pass1234"));
+        while (verifier.getQueuedVerifications() == 0) Thread.sleep(1);
+
+        assertThrows(RejectedExecutionException.class, () -> verifier.verify(user, "geheim"));
+
+        release.countDown();
+        assertTrue(running.get());
+        assertTrue(queued.get());
+        requests.shutdown();
+    }
+
+    @Test
+    void verify_timeout() {
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(1000);
+            return invocation.callRealMethod();
+        }).when(hasher).verify(anyString(), anyString());
+        CredentialVerifier verifier = new CredentialVerifier(dao, hasher, 1, 1, 10, 60, 100);
+
+        assertThrows(RejectedExecutionException.class, () -> verifier.verify(user, "pass1234"));
+    }
+}
@@ -0,0 +1,160 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringJUnitConfig(TokenStoreTestConfig.class)
+@TestPropertySource(properties = "tokenstore.jdbc.url=jdbc:h2:mem:tokens;DB_CLOSE_DELAY=-1")
+class DatabaseTokenStoreTest {
+
+    @Autowired
+    private TokenDao dao;
+
+    private AtomicLong clock;
+    private DatabaseTokenStore tokenStore;
+
+    @BeforeEach
+    void setUp() {
+        dao.deleteTokensExpiredBefore(Long.MAX_VALUE);
+        clock = new AtomicLong(0);
+        tokenStore = new DatabaseTokenStore(dao, 1000, 3, 60, clock::get);
+    }
+
+    @Test
+    void put_duplicateToken() {
+        assertTrue(tokenStore.put("token1", "user1"));
+        assertFalse(tokenStore.put("token1", "user2"));
+        assertEquals("user1", tokenStore.get("token1"));
+    }
+
+    @Test
+    void put_concurrentDuplicateToken() throws Exception {
+        tokenStore = new DatabaseTokenStore(dao, 1000, 1000, 60, clock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 20; i++) {
+                String token = "token" + i;
+                List<Future<Boolean>> stored = new ArrayList<>();
+                for (int j = 0; j < 4; j++) stored.add(executor.submit(() -> tokenStore.put(token, "user1")));
+                int successful = 0;
+                for (Future<Boolean> put : stored) if (put.get()) successful++;
+                assertEquals(1, successful, token);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void get_slidingExpiry() {
+        tokenStore.put("token1", "user1");
+        clock.set(900);
+        assertEquals("user1", tokenStore.get("token1"));
+        clock.set(1800);
+        assertEquals("user1", tokenStore.get("token1"));
+        clock.set(2800);
+        assertNull(tokenStore.get("token1"));
+        assertEquals(0, tokenStore.getLiveTokens());
+        assertEquals(1, tokenStore.getExpirations());
+    }
+
+    @Test
+    void sweep_removesExpiredTokens() {
+        tokenStore.put("token1", "user1");
+        clock.set(500);
+        tokenStore.put("token2", "user1");
+        clock.set(1000);
+        tokenStore.sweep();
+
+        assertEquals(1, tokenStore.getLiveTokens());
+        assertEquals("user1", tokenStore.get("token2"));
+    }
+
+    @Test
+    void sweep_evictsTokensExpiringFirstWhenFull() {
+        tokenStore.put("token1", "user1");
+        clock.set(1);
+        tokenStore.put("token2", "user1");
+        clock.set(2);
+        tokenStore.put("token3", "user1");
+        clock.set(3);
+        tokenStore.put("token4", "user1");
+        // logins do not count the table, the maximum size is restored by the next sweep
+        assertEquals(4, tokenStore.getLiveTokens());
+
+        tokenStore.sweep();
+        assertEquals(3, tokenStore.getLiveTokens());
+        assertEquals(1, tokenStore.getEvictions());
+        assertNull(tokenStore.get("token1"));
+        assertEquals("user1", tokenStore.get("token2"));
+    }
+
+    @Test
+    void sharedBetweenProcesses(@TempDir Path dir) throws Exception {
+        String url = "jdbc:h2:file:" + dir.resolve("tokens").toAbsolutePath() + ";AUTO_SERVER=TRUE";
+        try (AuthInstance instance1 = new AuthInstance(url); AuthInstance instance2 = new AuthInstance(url)) {
+            assertEquals("true", instance1.execute("put token1 user1"));
+            assertEquals("user1", instance2.execute("get token1"));
+            assertEquals("true", instance2.execute("put token2 user2"));
+            assertEquals("user2", instance1.execute("get token2"));
+            assertEquals("false", instance1.execute("put token2 user1"));
+
+            instance1.execute("remove token2");
+            assertEquals("null", instance2.execute("get token2"));
+            assertEquals("user1", instance2.execute("get token1"));
+        }
+    }
+
+    /** a {@link TokenStoreProcess} running in its own JVM */
+    private static class AuthInstance implements AutoCloseable {
+
+        private final Process process;
+        private final BufferedReader out;
+        private final PrintWriter in;
+
+        AuthInstance(String url) throws IOException {
+            String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+            process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", classpath, TokenStoreProcess.class.getName(), url)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            in = new PrintWriter(new OutputStreamWriter(process.getOutputStream()), true);
+            assertEquals("ready", readResult());
+        }
+
+        String execute(String command) throws IOException {
+            in.println(command);
+            return readResult();
+        }
+
+        private String readResult() throws IOException {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith("> ")) return line.substring(2);
+            }
+            throw new EOFException("process exited with " + process.onExit().join().exitValue());
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            in.close();
+            if (!process.waitFor(10, java.util.concurrent.TimeUnit.SECONDS)) process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryTokenStoreTest {
+
+    private static final String USER = "mmuster";
+
+    private AtomicLong clock;
+    private InMemoryTokenStore tokenStore;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(0);
+        tokenStore = new InMemoryTokenStore(1000, 3, 60, clock::get);
+    }
+
+    @Test
+    void put_duplicateToken() {
+        assertTrue(tokenStore.put("token1", USER));
+        assertFalse(tokenStore.put("token1", "other"));
+        assertEquals(USER, tokenStore.get("token1"));
+    }
+
+    @Test
+    void maxSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryTokenStore(1000, 0, 60, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryTokenStore(1000, -1, 60, clock::get));
+    }
+
+    @Test
+    void get_slidingExpiry() {
+        tokenStore.put("token1", USER);
+        clock.set(900);
+        assertEquals(USER, tokenStore.get("token1"));
+        clock.set(1800);
+        assertEquals(USER, tokenStore.get("token1"));
+        clock.set(2800);
+        assertNull(tokenStore.get("token1"));
+        assertEquals(0, tokenStore.getLiveTokens());
+        assertEquals(1, tokenStore.getExpirations());
+    }
+
+    @Test
+    void sweep_removesExpiredTokens() {
+        tokenStore.put("token1", USER);
+        clock.set(500);
+        tokenStore.put("token2", USER);
+        clock.set(1000);
+        tokenStore.sweep();
+
+        assertEquals(1, tokenStore.getLiveTokens());
+        assertEquals(USER, tokenStore.get("token2"));
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedWhenFull() {
+        tokenStore.put("token1", USER);
+        clock.set(1);
+        tokenStore.put("token2", USER);
+        clock.set(2);
+        tokenStore.put("token3", USER);
+        clock.set(3);
+        tokenStore.get("token1");
+        tokenStore.put("token4", USER);
+
+        assertEquals(3, tokenStore.getLiveTokens());
+        assertEquals(1, tokenStore.getEvictions());
+        assertNull(tokenStore.get("token2"));
+        assertEquals(USER, tokenStore.get("token1"));
+    }
+
+    @Test
+    void put_evictsExpiredTokenFirstWhenFull() {
+        tokenStore.put("token1", USER);
+        tokenStore.get("token1");
+        clock.set(500);
+        tokenStore.put("token2", USER);
+        tokenStore.put("token3", USER);
+        clock.set(1000);
+        tokenStore.put("token4", USER);
+
+        assertEquals(3, tokenStore.getLiveTokens());
+        assertEquals(0, tokenStore.getEvictions());
+        assertEquals(1, tokenStore.getExpirations());
+        assertEquals(USER, tokenStore.get("token2"));
+    }
+
+    @Test
+    void remove_freesPlace() {
+        tokenStore.put("token1", USER);
+        tokenStore.put("token2", USER);
+        tokenStore.put("token3", USER);
+        tokenStore.remove("token1");
+        tokenStore.remove("token1");
+        tokenStore.put("token4", USER);
+
+        assertEquals(3, tokenStore.getLiveTokens());
+        assertEquals(0, tokenStore.getEvictions());
+        tokenStore.sweep();
+        tokenStore.put("token5", USER);
+        assertEquals(1, tokenStore.getEvictions());
+        assertNull(tokenStore.get("token2"));
+    }
+
+    @Test
+    void sweep_lookupsPerSecond() {
+        tokenStore.put("token1", USER);
+        for (int i = 0; i < 10; i++) tokenStore.get("token1");
+        clock.set(500);
+        tokenStore.sweep();
+
+        assertEquals(10, tokenStore.getLookups());
+        assertEquals(20.0, tokenStore.getLookupsPerSecond());
+    }
+
+    @Test
+    void put_concurrent() throws InterruptedException {
+        InMemoryTokenStore store = new InMemoryTokenStore(60000, 100000, 60, System::currentTimeMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger stored = new AtomicInteger();
+        for (int i = 0; i < 10000; i++) {
+            String token = "token" + (i % 5000);
+            executor.execute(() -> {
+                if (store.put(token, USER)) stored.incrementAndGet();
+                store.get(token);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(5000, stored.get());
+        assertEquals(5000, store.getLiveTokens());
+    }
+
+    @Test
+    void put_concurrentWhenFull() throws InterruptedException {
+        InMemoryTokenStore store = new InMemoryTokenStore(60000, 100, 60, System::currentTimeMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger maxLive = new AtomicInteger();
+        for (int i = 0; i < 10000; i++) {
+            String token = "token" + i;
+            executor.execute(() -> {
+                assertTrue(store.put(token, USER));
+                store.get(token);
+                maxLive.accumulateAndGet((int) store.getLiveTokens(), Math::max);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, store.getLiveTokens());
+        assertEquals(100, maxLive.get());
+        assertEquals(9900, store.getEvictions());
+    }
+}
@@ -0,0 +1,41 @@
+package s0566430.songsMS;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Stand-in for an auth instance in {@link DatabaseTokenStoreTest}: runs a {@link DatabaseTokenStore} against the
+ * database given as first argument and executes the commands <code>put token userId</code>, <code>get token</code>
+ * and <code>remove token</code> read from stdin, printing one result line prefixed with "&gt; " per command.
+ */
+public class TokenStoreProcess {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("tokenstore.jdbc.url", args[0]);
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TokenStoreTestConfig.class)) {
+            TokenStore tokenStore = new DatabaseTokenStore(context.getBean(TokenDao.class), 1800, 1000, 60);
+            System.out.println("> ready");
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] command = line.split(" ");
+                switch (command[0]) {
+                    case "put":
+                        System.out.println("> " + tokenStore.put(command[1], command[2]));
+                        break;
+                    case "get":
+                        System.out.println("> " + tokenStore.get(command[1]));
+                        break;
+                    case "remove":
+                        tokenStore.remove(command[1]);
+                        System.out.println("> removed");
+                        break;
+                    default:
+                        System.out.println("> unknown command");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package s0566430.songsMS;
+
+import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import s0566430.songsMS.model.Token;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * Hibernate setup for the token table on an H2 database given by the <code>tokenstore.jdbc.url</code> property.
+ */
+@TestConfiguration
+@EnableTransactionManagement
+public class TokenStoreTestConfig {
+
+    private Environment env;
+
+    public TokenStoreTestConfig(Environment env) {
+        this.env = env;
+    }
+
+    @Bean
+    public LocalSessionFactoryBean sessionFactory() {
+        LocalSessionFactoryBean sessionFactory = new LocalSessionFactoryBean();
+        sessionFactory.setDataSource(dataSource());
+        sessionFactory.setAnnotatedClasses(Token.class);
+        Properties hibernateProperties = new Properties();
+        hibernateProperties.setProperty("hibernate.hbm2ddl.auto", "update");
+        hibernateProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        sessionFactory.setHibernateProperties(hibernateProperties);
+        return sessionFactory;
+    }
+
+    @Bean
+    public DataSource dataSource() {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(env.getRequiredProperty("tokenstore.jdbc.url"));
+        return dataSource;
+    }
+
+    @Bean
+    public PlatformTransactionManager hibernateTransactionManager() {
+        HibernateTransactionManager transactionManager = new HibernateTransactionManager();
+        transactionManager.setSessionFactory(sessionFactory().getObject());
+        return transactionManager;
+    }
+
+    @Bean
+    public TokenDao tokenDao() {
+        return new TokenDaoImpl();
+    }
+}
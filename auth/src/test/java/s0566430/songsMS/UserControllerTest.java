@@ -2,12 +2,16 @@ package s0566430.songsMS;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import s0566430.songsMS.model.User;
 
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -25,16 +29,22 @@ class UserControllerTest {
     private static final String WRONG_USERID_JSON = "{\"userId\":\"falsch\",\"password\":\"pass1234\"}";
     private static final String FULL_USER_JSON = "{\"userId\":\"mmuster\",\"password\":\"pass1234\",\"firstName\":\"Maxime\",\"lastName\":\"Muster\"}";
     private static final String RESPONSE_TOKEN = "abcdefghijklmo";
+    private static final String TOKEN_SECRET = "secret";
 
     @BeforeEach
     void setUp() {
         dao = Mockito.mock(UserDao.class);
-        UserController uc = new UserController(dao);
+        UserController uc = newUserController(new TokenSigner("", 3600));
         ucSpy = Mockito.spy(uc);
         mvc = MockMvcBuilders.standaloneSetup(ucSpy).build();
         testUser = new User("mmuster","pass1234","Maxime","Muster");
     }
 
+    private UserController newUserController(TokenSigner tokenSigner) {
+        CredentialVerifier credentialVerifier = new CredentialVerifier(dao, new PasswordHasher(1000), 2, 10, 5000, 60, 100);
+        return new UserController(dao, tokenSigner, new InMemoryTokenStore(1800, 1000, 60), credentialVerifier);
+    }
+
     @Test
     void login_successful() throws Exception {
         Mockito.when(dao.findUser("mmuster")).thenReturn(testUser);
@@ -138,4 +148,94 @@ class UserControllerTest {
         mvc.perform(get("/user/"))
                 .andExpect(status().isNotFound());
     }
-}
\ No newline at end of file
+
+    @Test
+    void login_signedToken() throws Exception {
+        mvc = MockMvcBuilders.standaloneSetup(newUserController(new TokenSigner(TOKEN_SECRET, 3600))).build();
+        Mockito.when(dao.findUser("mmuster")).thenReturn(testUser);
+
+        String token = mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(LOGIN_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.TEXT_PLAIN))
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(TokenSigner.isSignedToken(token));
+        assertEquals("mmuster", new TokenSigner(TOKEN_SECRET, 0).verify(token));
+        assertNull(new TokenSigner("other secret", 3600).verify(token));
+
+        mvc.perform(get("/"+token))
+                .andExpect(status().isOk())
+                .andExpect(content().string("mmuster"));
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenTampered() throws Exception {
+        TokenSigner signer = new TokenSigner(TOKEN_SECRET, 3600);
+        mvc = MockMvcBuilders.standaloneSetup(newUserController(signer)).build();
+        String token = signer.sign("mmuster");
+        String forged = new TokenSigner("other secret", 3600).sign("admin");
+
+        mvc.perform(get("/"+forged.substring(0, forged.indexOf('.'))+token.substring(token.indexOf('.'))))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenExpired() throws Exception {
+        mvc = MockMvcBuilders.standaloneSetup(newUserController(new TokenSigner(TOKEN_SECRET, 3600))).build();
+        String token = new TokenSigner(TOKEN_SECRET, -1).sign("mmuster");
+
+        mvc.perform(get("/"+token))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void generateResponseToken_lettersAndDigits() {
+        UserController uc = newUserController(new TokenSigner("", 3600));
+        for (int i = 0; i < 100; i++) {
+            String token = uc.generateResponseToken();
+            assertEquals(20, token.length());
+            assertTrue(token.matches("[A-Za-z0-9]+"));
+            assertNotEquals(token, uc.generateResponseToken());
+        }
+    }
+
+    @Test
+    void login_hashedPassword() throws Exception {
+        testUser.setPassword(new PasswordHasher(1000).hash("pass1234"));
+        Mockito.when(dao.findUser("mmuster")).thenReturn(testUser);
+
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(LOGIN_JSON))
+                .andExpect(status().isOk());
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(WRONG_PASSWORD_JSON))
+                .andExpect(status().isUnauthorized());
+        Mockito.verify(dao, Mockito.never()).updatePassword(any(), any());
+    }
+
+    @Test
+    void login_plaintextPasswordIsRehashed() throws Exception {
+        Mockito.when(dao.findUser("mmuster")).thenReturn(testUser);
+
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(LOGIN_JSON))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(dao).updatePassword(eq("mmuster"), hash.capture());
+        assertTrue(hash.getValue().startsWith("pbkdf2$1000$"));
+        assertTrue(new PasswordHasher(1000).verify("pass1234", hash.getValue()));
+    }
+
+    @Test
+    void login_metrics() throws Exception {
+        Mockito.when(dao.findUser("mmuster")).thenReturn(testUser);
+
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(LOGIN_JSON));
+        mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content(WRONG_PASSWORD_JSON));
+
+        LoginMetrics metrics = ucSpy.getLoginMetrics();
+        assertEquals(2, metrics.getLogins());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(0, metrics.getRejections());
+        assertTrue(metrics.getMaxLatencyMillis() > 0);
+        assertTrue(metrics.getLoginsPerSecond() > 0);
+    }
+}
@@ -0,0 +1,37 @@
+package s0566430.songsMS.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import s0566430.songsMS.TokenGenerator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the shared {@link TokenGenerator} with the previous per-character <code>new Random()</code> implementation.
+ * Run with <code>-prof gc</code> to compare allocation rates as well, see README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenGeneratorBenchmark {
+
+    private final TokenGenerator tokenGenerator = new TokenGenerator();
+
+    @Benchmark
+    public String tokenGenerator() {
+        return tokenGenerator.generate();
+    }
+
+    @Benchmark
+    public String legacyRandomPerCharacter() {
+        char[] array = new char[20];
+        for (int i=0; i<array.length; i++) {
+            do array[i] = (char) new Random().nextInt(127);
+            while (!Character.isLetterOrDigit(array[i]));
+        }
+        return new String(array);
+    }
+}
@@ -12,13 +12,20 @@ public class AuthService {
 
     private RestTemplate restTemplate;
     private EurekaClient discoveryClient;
+    private TokenVerifier tokenVerifier;
 
-    public AuthService(RestTemplate restTemplate, EurekaClient discoveryClient) {
+    public AuthService(RestTemplate restTemplate, EurekaClient discoveryClient, TokenVerifier tokenVerifier) {
         this.restTemplate = restTemplate;
         this.discoveryClient = discoveryClient;
+        this.tokenVerifier = tokenVerifier;
     }
 
     String getUserIdForToken(String token) {
+        if (token == null) return null;
+        // signed tokens are verified locally, only opaque tokens have to be resolved by the auth service
+        if (tokenVerifier.isEnabled() && TokenVerifier.isSignedToken(token))
+            return tokenVerifier.verify(token);
+
         String url = discoveryClient.getNextServerFromEureka(AUTH_SERVICE_NAME, false).getHomePageUrl()
                 + token;
         try {
@@ -0,0 +1,33 @@
+package s0566430.songsMS;
+
+import java.util.Base64;
+
+/**
+ * The <code>Digest</code> request header of RFC 3230, with which clients name the content they are about to upload,
+ * e.g. <code>Digest: sha-256=X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE=</code>.
+ */
+final class DigestHeader {
+
+    static final String NAME = "Digest";
+    private static final String SHA_256 = "sha-256=";
+
+    private DigestHeader() {
+    }
+
+    /**@return the hex encoded SHA-256 digest of the header or <code>null</code> if it has none, digests of other
+     * algorithms are ignored
+     * @throws IllegalArgumentException if the SHA-256 digest is malformed, the client asked for a check that cannot be made
+     */
+    static String sha256(String header) throws IllegalArgumentException {
+        if (header == null) return null;
+        for (String digest : header.split(",")) {
+            digest = digest.trim();
+            if (!digest.regionMatches(true, 0, SHA_256, 0, SHA_256.length())) continue;
+            byte[] bytes = Base64.getDecoder().decode(digest.substring(SHA_256.length()));
+            if (bytes.length != 32)
+                throw new IllegalArgumentException("SHA-256 digest of " + bytes.length + " bytes");
+            return StorageService.toHex(bytes);
+        }
+        return null;
+    }
+}
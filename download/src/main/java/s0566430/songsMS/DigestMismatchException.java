@@ -0,0 +1,13 @@
+package s0566430.songsMS;
+
+import java.io.IOException;
+
+/**
+ * Thrown if uploaded content does not match the digest the client has given for it in the <code>Digest</code> header.
+ */
+public class DigestMismatchException extends IOException {
+
+    public DigestMismatchException(String filename) {
+        super("content does not match the given digest: " + filename);
+    }
+}
@@ -1,13 +1,15 @@
 package s0566430.songsMS;
 
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
@@ -15,6 +17,8 @@ import java.net.URI;
 @RestController
 public class DownloadController {
 
+    private static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
     private StorageService storageService;
     private AuthService authService;
 
@@ -23,36 +27,77 @@ public class DownloadController {
         this.authService = authService;
     }
 
+    /**
+     * Sends the file of the song, supports byte ranges so that players can seek and interrupted downloads can be resumed.
+     */
     @GetMapping(value = "/{id}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable int id, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) throws IOException {
-        if (!authService.doesTokenExist(auth))
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    public void downloadFile(@PathVariable int id, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!authService.doesTokenExist(auth)) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
 
-        Resource file;
+        String filename = "song-"+id;
+        StorageService.StoredFile file;
         try {
-            file = storageService.load("song-"+id);
+            file = storageService.loadStoredFile(filename);
         } catch (FileNotFoundException e) {
-            return ResponseEntity.notFound().build();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return;
         }
-        return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION,
-                "attachment; filename=\"" + file.getFilename() + "\"").body(file);
+        // the content is stored under its digest, which makes it a strong validator
+        new FileDownload(file.getPath(), filename, "\"" + file.getDigest() + "\"", file.getLastModified(), AUDIO_MPEG)
+                .write(request, response);
     }
 
+    /**
+     * Stores the <code>file</code> part of the multipart body as the file of the song. The body is parsed while it arrives
+     * and the part is written straight to the storage, so neither memory nor a temporary copy grow with the size of the file.
+     * If the SHA-256 digest in the <code>Digest</code> header names content that is already stored, the body is not read,
+     * otherwise the body must match it. A malformed SHA-256 digest is rejected instead of skipping the check.
+     */
     @PostMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file, @PathVariable int id, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) {
+    public ResponseEntity<String> uploadFile(@PathVariable int id, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
+                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                             @RequestHeader(value = DigestHeader.NAME, required = false) String digest, HttpServletRequest request) {
         if (!authService.doesTokenExist(auth))
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
-        if (!file.getContentType().equals("audio/mpeg"))
-            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        String boundary = contentType.getParameter("boundary");
+        if (boundary == null)
+            return ResponseEntity.badRequest().build();
+        String sha256;
         try {
-            storageService.save(file, "song-"+id);
+            sha256 = DigestHeader.sha256(digest);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            if (sha256 != null && storageService.link("song-"+id, sha256))
+                return ResponseEntity.created(URI.create("/download/"+id)).contentType(MediaType.TEXT_PLAIN).build();
+            // boundaries can be quoted, but never contain quotes
+            MultipartParser parser = new MultipartParser(request.getInputStream(), boundary.replace("\"", ""));
+            for (MultipartParser.Part part; (part = parser.next()) != null; ) {
+                if (!"file".equals(part.getName())) continue;
+                if (!AUDIO_MPEG.toString().equals(part.getContentType()))
+                    return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+                storageService.save(part.getBody(), "song-"+id, sha256);
+                return ResponseEntity.created(URI.create("/download/"+id)).contentType(MediaType.TEXT_PLAIN).build();
+            }
+            return ResponseEntity.badRequest().build();
+        }
+        catch (MaxUploadSizeExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        catch (MultipartException | DigestMismatchException e) {
+            return ResponseEntity.badRequest().build();
         }
         catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
-        return ResponseEntity.created(URI.create("/download/"+id)).contentType(MediaType.TEXT_PLAIN).build();
     }
 }
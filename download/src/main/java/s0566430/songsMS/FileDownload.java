@@ -0,0 +1,210 @@
+package s0566430.songsMS;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes a stored file as the response to a GET or HEAD request, honouring <code>Range</code> requests (RFC 7233).
+ * A single range is answered with <code>206 Partial Content</code>, several ranges with a <code>multipart/byteranges</code> body.
+ * Overlapping and adjacent ranges are merged, unsatisfiable ones are dropped, if none is left the answer is
+ * <code>416 Range Not Satisfiable</code>. The strong ETag and the Last-Modified date given by the caller
+ * serve both the usual conditional requests and <code>If-Range</code>.
+ * <p>
+ * Whole files and single ranges are handed to the connector's sendfile support if the container offers it,
+ * Tomcat then transfers them from the page cache to the socket with {@link FileChannel#transferTo} after the request
+ * has been handled, without copying them through the JVM. Small bodies, multipart bodies and containers without sendfile
+ * are written to the response stream.
+ */
+class FileDownload {
+
+    private static final String BYTES_UNIT = "bytes=";
+    // request attributes of Tomcat's sendfile support, see org.apache.coyote.Constants
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    /** below this size setting up sendfile costs more than copying, the same threshold as Tomcat's DefaultServlet */
+    static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    private final Path file;
+    private final String filename;
+    private final String etag;
+    private final long lastModified;
+    private final MediaType contentType;
+
+    /**
+     * @param lastModified the time the content was stored under the name, the file itself may be shared with names
+     * stored earlier or later
+     */
+    FileDownload(Path file, String filename, String etag, long lastModified, MediaType contentType) {
+        this.file = file;
+        this.filename = filename;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+    }
+
+    void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+
+        // sets ETag and Last-Modified, answers If-None-Match, If-Modified-Since, If-Match and If-Unmodified-Since
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified))
+            return;
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null || !range.startsWith(BYTES_UNIT) || !matchesIfRange(request, etag, lastModified)) {
+            writeFull(request, response, length);
+            return;
+        }
+
+        List<long[]> ranges;
+        try {
+            ranges = satisfiableRanges(HttpRange.parseRanges(range), length);
+        } catch (IllegalArgumentException e) {
+            ranges = List.of();
+        }
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (ranges.size() == 1)
+            writeRange(request, response, ranges.get(0), length);
+        else
+            writeRanges(request, response, ranges, length);
+    }
+
+    /**@return true if the request has no If-Range header or its validator still matches the file,
+     * entity tags are compared strongly and dates must be equal to the Last-Modified date
+     */
+    static boolean matchesIfRange(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**@return the satisfiable ranges as inclusive [start, end] pairs, sorted and with overlapping or adjacent ranges merged
+     */
+    static List<long[]> satisfiableRanges(List<HttpRange> ranges, long length) {
+        List<long[]> satisfiable = new ArrayList<>();
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            // ranges starting behind the end of the file cannot be satisfied
+            if (start < length && start <= end)
+                satisfiable.add(new long[]{start, end});
+        }
+        satisfiable.sort(Comparator.comparingLong(r -> r[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : satisfiable) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1)
+                last[1] = Math.max(last[1], range[1]);
+            else
+                merged.add(range);
+        }
+        return merged;
+    }
+
+    private void writeFull(HttpServletRequest request, HttpServletResponse response, long length) throws IOException {
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(length);
+        if (hasBody(request))
+            send(request, response, 0, length);
+    }
+
+    private void writeRange(HttpServletRequest request, HttpServletResponse response, long[] range, long length) throws IOException {
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+        response.setContentLengthLong(range[1] - range[0] + 1);
+        if (hasBody(request))
+            send(request, response, range[0], range[1] - range[0] + 1);
+    }
+
+    private void writeRanges(HttpServletRequest request, HttpServletResponse response, List<long[]> ranges, long length) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>();
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        long contentLength = end.length;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n" +
+                    HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n" +
+                    HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, length) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (!hasBody(request)) return;
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            copy(out, range[0], range[1] - range[0] + 1);
+        }
+        out.write(end);
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, long position, long count) throws IOException {
+        if (count >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, position);
+            request.setAttribute(SENDFILE_END, position + count);
+            return;
+        }
+        copy(response.getOutputStream(), position, count);
+    }
+
+    private void copy(OutputStream out, long position, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (count > 0) {
+                long sent = channel.transferTo(position, count, target);
+                if (sent <= 0) throw new IOException("file shrunk while being sent: " + filename);
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    private static boolean hasBody(HttpServletRequest request) {
+        return !"HEAD".equals(request.getMethod());
+    }
+}
@@ -0,0 +1,197 @@
+package s0566430.songsMS;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.multipart.MultipartException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the parts of a <code>multipart/form-data</code> body (RFC 7578) one after the other while it arrives,
+ * so that a part can be streamed to its destination instead of being buffered first. Only a buffer of fixed size is held,
+ * the body of each part is an {@link InputStream} that ends at the next boundary.
+ * Parts that are not read are skipped by {@link #next()}. A malformed body causes a {@link MultipartException}.
+ */
+class MultipartParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+
+    /** a part of the body, the body stream is only valid until the next call to {@link #next()} */
+    static class Part {
+        private final String name;
+        private final String filename;
+        private final String contentType;
+        private final InputStream body;
+
+        Part(String name, String filename, String contentType, InputStream body) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getFilename() {
+            return filename;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        InputStream getBody() {
+            return body;
+        }
+    }
+
+    private final InputStream in;
+    /** CRLF, two dashes and the boundary, which separate the parts */
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int head, tail;
+    private PartBody current;
+    private boolean finished;
+
+    MultipartParser(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * delimiter.length)];
+        // the first boundary may follow directly without the CRLF of a preamble
+        buffer[tail++] = '\r';
+        buffer[tail++] = '\n';
+        // the preamble before the first boundary is skipped like a part
+        current = new PartBody();
+    }
+
+    /**@return the next part or <code>null</code> after the last one
+     */
+    Part next() throws IOException {
+        if (finished) return null;
+        current.skip();
+
+        if (!fill(2)) throw new MultipartException("multipart body ends after a boundary");
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        readLine();
+
+        String name = null, filename = null, contentType = null;
+        int headerSize = 0;
+        for (String line; !(line = readLine()).isEmpty(); ) {
+            headerSize += line.length();
+            if (headerSize > MAX_HEADER_SIZE) throw new MultipartException("part headers too large");
+            int colon = line.indexOf(':');
+            if (colon <= 0) throw new MultipartException("malformed part header: " + line);
+            String header = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (header.equalsIgnoreCase(HttpHeaders.CONTENT_DISPOSITION)) {
+                try {
+                    ContentDisposition disposition = ContentDisposition.parse(value);
+                    name = disposition.getName();
+                    filename = disposition.getFilename();
+                } catch (IllegalArgumentException e) {
+                    throw new MultipartException("malformed part header: " + line, e);
+                }
+            } else if (header.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE)) {
+                contentType = value;
+            }
+        }
+        current = new PartBody();
+        return new Part(name, filename, contentType, current);
+    }
+
+    /**@return the line up to the next CRLF, without it
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (!fill(2)) throw new MultipartException("multipart body ends within the part headers");
+            if (buffer[head] == '\r' && buffer[head + 1] == '\n') {
+                head += 2;
+                return line.toString();
+            }
+            if (line.length() >= MAX_HEADER_SIZE) throw new MultipartException("part header line too long");
+            line.append((char) (buffer[head++] & 0xff));
+        }
+    }
+
+    /** reads until at least <code>count</code> bytes are buffered
+     * @return false if the body ended before
+     */
+    private boolean fill(int count) throws IOException {
+        if (tail - head >= count) return true;
+        System.arraycopy(buffer, head, buffer, 0, tail - head);
+        tail -= head;
+        head = 0;
+        while (tail < count) {
+            int read = in.read(buffer, tail, buffer.length - tail);
+            if (read < 0) return false;
+            tail += read;
+        }
+        return true;
+    }
+
+    /**@return the first position up to <code>last</code> where the delimiter starts or -1
+     */
+    private int indexOfDelimiter(int last) {
+        outer:
+        for (int i = head; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++)
+                if (buffer[i + j] != delimiter[j]) continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /** the body of a part, ends in front of the delimiter that follows it and consumes the delimiter */
+    private class PartBody extends InputStream {
+
+        private final byte[] single = new byte[1];
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) return -1;
+            if (len == 0) return 0;
+            if (!fill(delimiter.length)) throw new MultipartException("multipart body ends within a part");
+
+            // only the bytes that are about to be returned have to be searched
+            int last = Math.min(tail - delimiter.length, head + len);
+            int delimiterAt = indexOfDelimiter(last);
+            if (delimiterAt == head) {
+                head += delimiter.length;
+                done = true;
+                return -1;
+            }
+            int count = delimiterAt >= 0 ? delimiterAt - head : Math.min(len, last - head + 1);
+            System.arraycopy(buffer, head, b, off, count);
+            head += count;
+            return count;
+        }
+
+        void skip() throws IOException {
+            while (!done) {
+                if (!fill(delimiter.length)) throw new MultipartException("multipart body ends within a part");
+                int delimiterAt = indexOfDelimiter(tail - delimiter.length);
+                if (delimiterAt >= 0) {
+                    head = delimiterAt + delimiter.length;
+                    done = true;
+                } else {
+                    head = tail - delimiter.length + 1;
+                }
+            }
+        }
+    }
+}
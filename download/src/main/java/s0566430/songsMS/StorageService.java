@@ -1,49 +1,377 @@
 package s0566430.songsMS;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
 
+/**
+ * Content-addressed storage of the song files. Every distinct content is stored once under its SHA-256 digest in
+ * <code>objects/ab/cd/abcd...</code>, the index in <code>index/</code> maps each stored name to the digest of its content.
+ * The stored names referencing a digest are counted. An object whose last name is replaced is only deleted after a grace
+ * period, downloads that resolved the name before can still open it, see {@link FileDownload}.
+ * Files of the previous layout, stored directly under their name, are moved into the objects when the service starts.
+ */
 @Service
 public class StorageService {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String UPLOAD_PATTERN = "upload-*.tmp";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
     private final Path location;
+    private final Path objects;
+    private final Path index;
+    private final long maxFileSize;
+    private final long orphanGraceMillis;
+    private final LongSupplier clock;
+    /** name to stored file, read from the index */
+    private final Map<String, StoredFile> files = new ConcurrentHashMap<>();
+    /** digest to the number of names referencing it */
+    private final Map<String, Integer> references = new ConcurrentHashMap<>();
+    /** digest to the time the object lost its last name, deleted once the grace period has passed */
+    private final Map<String, Long> orphans = new HashMap<>();
+    /** guards changes of the objects, the index and the orphans */
+    private final Object lock = new Object();
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public StorageService(@Value("${storage.location}") String path, @Value("${storage.max-file-size:1GB}") String maxFileSize,
+                          @Value("${storage.orphan-grace-seconds:3600}") long orphanGraceSeconds) {
+        this(path, maxFileSize, orphanGraceSeconds * 1000, System::currentTimeMillis);
+    }
 
-    public StorageService(@Value("${storage.location}") String path) {
+    StorageService(String path, String maxFileSize, long orphanGraceMillis, LongSupplier clock) {
         this.location = Paths.get(path);
+        this.objects = location.resolve("objects");
+        this.index = location.resolve("index");
+        this.maxFileSize = DataSize.parse(maxFileSize).toBytes();
+        this.orphanGraceMillis = orphanGraceMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * A name resolved to its content: the object, the digest and the time the name was bound to it.
+     * The object of an orphaned digest is kept for the grace period, so the path stays valid while the response is sent.
+     */
+    public static final class StoredFile {
+        private final Path path;
+        private final String digest;
+        private final long lastModified;
+
+        private StoredFile(Path path, String digest, long lastModified) {
+            this.path = path;
+            this.digest = digest;
+            this.lastModified = lastModified;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        /** the time the name was bound to the content, not the time the shared object was written */
+        public long getLastModified() {
+            return lastModified;
+        }
     }
 
     @PostConstruct
     public void init() throws IOException {
-        Files.createDirectories(location);
+        Files.createDirectories(objects);
+        Files.createDirectories(index);
+        // uploads that were in progress when the service stopped cannot be resumed
+        try (DirectoryStream<Path> uploads = Files.newDirectoryStream(location, UPLOAD_PATTERN)) {
+            for (Path upload : uploads) Files.deleteIfExists(upload);
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(index)) {
+            for (Path entry : entries) {
+                if (entry.getFileName().toString().endsWith(".tmp")) {
+                    Files.delete(entry);
+                    continue;
+                }
+                String digest = Files.readString(entry, StandardCharsets.US_ASCII).trim();
+                long boundAt = Files.getLastModifiedTime(entry).toMillis();
+                files.put(entry.getFileName().toString(), new StoredFile(objectPath(digest), digest, boundAt));
+                references.merge(digest, 1, Integer::sum);
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(location, "song-*")) {
+            for (Path file : files) commit(file, file.getFileName().toString(), digest(file));
+        }
+        // objects whose index entry was never written or that were orphaned before the service stopped
+        try (Stream<Path> stored = Files.walk(objects)) {
+            for (Path object : (Iterable<Path>) stored.filter(Files::isRegularFile)::iterator)
+                if (!references.containsKey(object.getFileName().toString())) Files.delete(object);
+        }
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
     }
 
-    public String save(MultipartFile file, String filename) throws IOException {
-        if (file.isEmpty()) {
-            throw new IOException("empty file: " + filename);
+    /** deletes the objects that have not been referenced again within the grace period */
+    void sweep() {
+        long now = clock.getAsLong();
+        synchronized (lock) {
+            for (Iterator<Map.Entry<String, Long>> it = orphans.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> orphan = it.next();
+                if (references.containsKey(orphan.getKey())) {
+                    it.remove();
+                } else if (orphan.getValue() + orphanGraceMillis <= now) {
+                    try {
+                        Files.deleteIfExists(objectPath(orphan.getKey()));
+                        it.remove();
+                    } catch (IOException e) {
+                        // tried again at the next sweep, the object is deleted at the next start at the latest
+                    }
+                }
+            }
         }
-        try (InputStream inputStream = file.getInputStream()) {
-            Files.copy(inputStream, location.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the content to a temporary file in the storage directory while computing its digest and stores it
+     * once it is complete, so that the file is written at most once and readers never see a partial upload.
+     * Content that is already stored is not stored again.
+     * @param expectedDigest the hex encoded SHA-256 digest the client has given for the content or <code>null</code>
+     * @throws MaxUploadSizeExceededException if the content is larger than <code>storage.max-file-size</code>
+     * @throws DigestMismatchException if the content does not match <code>expectedDigest</code>, nothing is stored then
+     */
+    public String save(InputStream content, String filename, String expectedDigest) throws IOException {
+        Path upload = newUpload();
+        try {
+            MessageDigest digest = newDigest();
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(upload)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read; (read = content.read(buffer)) >= 0; ) {
+                    size += read;
+                    if (size > maxFileSize) throw new MaxUploadSizeExceededException(maxFileSize);
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (size == 0)
+                throw new IOException("empty file: " + filename);
+            commit(upload, filename, verified(toHex(digest.digest()), expectedDigest, filename));
+        } finally {
+            Files.deleteIfExists(upload);
         }
         return filename;
     }
 
+    public String save(InputStream content, String filename) throws IOException {
+        return save(content, filename, null);
+    }
+
+    /**
+     * Stores the name for content that is already stored, so that it does not have to be uploaded again.
+     * @param digest the hex encoded SHA-256 digest of the content
+     * @return false if no content with the digest is stored
+     */
+    public boolean link(String filename, String digest) throws IOException {
+        synchronized (lock) {
+            if (!references.containsKey(digest)) return false;
+            reference(filename, digest);
+            return true;
+        }
+    }
+
+    /**
+     * Creates the temporary file of an upload that arrives in chunks, see {@link #writeChunk}.
+     * @throws MaxUploadSizeExceededException if <code>length</code> is larger than <code>storage.max-file-size</code>
+     */
+    public Path createUpload(long length) throws IOException {
+        if (length > maxFileSize) throw new MaxUploadSizeExceededException(maxFileSize);
+        Path upload = newUpload();
+        try (RandomAccessFile file = new RandomAccessFile(upload.toFile(), "rw")) {
+            file.setLength(length);
+        }
+        return upload;
+    }
+
+    /**
+     * Writes up to <code>count</code> bytes of the content at <code>position</code> of the upload.
+     * Positional writes do not share state, so chunks can be written by several threads at once.
+     * @return the number of bytes written, less than <code>count</code> if the content ended early
+     */
+    public long writeChunk(Path upload, long position, InputStream content, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(upload, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, count)];
+            long written = 0;
+            while (written < count) {
+                int read = content.read(buffer, 0, (int) Math.min(buffer.length, count - written));
+                if (read < 0) break;
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining())
+                    written += channel.write(chunk, position + written);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Stores the complete upload under the name, its digest is computed in one sequential read as the chunks came in any order.
+     * The upload is deleted in any case.
+     * @param expectedDigest the hex encoded SHA-256 digest the client has given for the content or <code>null</code>
+     * @throws DigestMismatchException if the content does not match <code>expectedDigest</code>, nothing is stored then
+     */
+    public void completeUpload(Path upload, String filename, String expectedDigest) throws IOException {
+        try {
+            commit(upload, filename, verified(digest(upload), expectedDigest, filename));
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    public void deleteUpload(Path upload) throws IOException {
+        Files.deleteIfExists(upload);
+    }
+
+    private Path newUpload() throws IOException {
+        // not a temp file, which would only be readable by the owner
+        return Files.createFile(location.resolve("upload-" + UUID.randomUUID() + ".tmp"));
+    }
+
+    /**@return the hex encoded SHA-256 digest of the stored file or <code>null</code> if there is none
+     */
+    public String getDigest(String filename) {
+        StoredFile file = files.get(filename);
+        return file == null ? null : file.getDigest();
+    }
+
+    /**@return the stored file resolved once, so that its path, digest and date describe the same content
+     */
+    public StoredFile loadStoredFile(String filename) throws IOException {
+        StoredFile file = files.get(filename);
+        if (file == null)
+            throw new FileNotFoundException("unknown file: "+filename);
+        return file;
+    }
+
+    /**@return the path of the stored file, for responses that read it themselves
+     */
+    public Path loadFile(String filename) throws IOException {
+        return loadStoredFile(filename).getPath();
+    }
+
     public Resource load(String filename) throws IOException {
-        Path file = location.resolve(filename);
-        Resource resource = new UrlResource(file.toUri());
+        Resource resource = new UrlResource(loadFile(filename).toUri());
         if (!resource.exists())
             throw new FileNotFoundException("unknown file: "+filename);
         return resource;
     }
-}
\ No newline at end of file
+
+    private static String verified(String digest, String expectedDigest, String filename) throws DigestMismatchException {
+        if (expectedDigest != null && !expectedDigest.equals(digest))
+            throw new DigestMismatchException(filename);
+        return digest;
+    }
+
+    /** moves the file to the object of its digest unless that is stored already and points the name to it */
+    private void commit(Path file, String filename, String digest) throws IOException {
+        synchronized (lock) {
+            Path object = objectPath(digest);
+            if (references.containsKey(digest) || Files.exists(object)) {
+                Files.delete(file);
+            } else {
+                Files.createDirectories(object.getParent());
+                Files.move(file, object, StandardCopyOption.ATOMIC_MOVE);
+            }
+            reference(filename, digest);
+        }
+    }
+
+    /**
+     * Writes the index entry of the name and moves its reference to the digest, only called while holding the lock.
+     * The modification time of the entry is the time the name was bound, which is kept across restarts.
+     */
+    private void reference(String filename, String digest) throws IOException {
+        long now = clock.getAsLong();
+        Path entry = index.resolve(filename);
+        Path update = index.resolve(filename + "." + UUID.randomUUID() + ".tmp");
+        Files.writeString(update, digest, StandardCharsets.US_ASCII);
+        Files.setLastModifiedTime(update, FileTime.fromMillis(now));
+        Files.move(update, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        references.merge(digest, 1, Integer::sum);
+        StoredFile previous = files.put(filename, new StoredFile(objectPath(digest), digest, now));
+        if (previous != null && references.merge(previous.getDigest(), -1, Integer::sum) == 0) {
+            references.remove(previous.getDigest());
+            orphans.put(previous.getDigest(), now);
+        }
+    }
+
+    private Path objectPath(String digest) {
+        return objects.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+    }
+
+    private static String digest(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read; (read = in.read(buffer)) >= 0; ) digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Verifies the signed tokens issued by the auth service locally, see <code>TokenSigner</code> in the auth component.
+ * Requires the same <code>auth.token.secret</code> as the auth service, verification is disabled if no secret is configured.
+ * The services are built independently and share no library, this is a copy of <code>TokenVerifier</code> in the songs
+ * component and has to be kept in sync with it and with the token format of <code>TokenSigner</code>.
+ */
+@Component
+public class TokenVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public TokenVerifier(@Value("${auth.token.secret:}") String secret) {
+        this.key = secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /** signed tokens contain a '.', opaque tokens only consist of letters and digits */
+    public static boolean isSignedToken(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    /**@param token a signed token issued by the auth service
+     * @return the user id contained in the token or <code>null</code> if the signature is invalid or the token has expired
+     */
+    public String verify(String token) {
+        if (!isEnabled() || !isSignedToken(token)) return null;
+        int separator = token.indexOf('.');
+        String payload = token.substring(0, separator);
+        try {
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, signature(payload)))
+                return null;
+            String content = new String(DECODER.decode(payload), StandardCharsets.UTF_8);
+            int colon = content.indexOf(':');
+            if (Long.parseLong(content.substring(0, colon)) <= System.currentTimeMillis())
+                return null;
+            return content.substring(colon + 1);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private byte[] signature(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+}
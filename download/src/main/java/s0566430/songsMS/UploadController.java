@@ -0,0 +1,172 @@
+package s0566430.songsMS;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URI;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable uploads of song files in chunks:
+ * <code>POST /{id}/uploads</code> starts an upload of <code>X-Upload-Content-Length</code> bytes,
+ * <code>PUT</code> to its location stores the chunk given by <code>Content-Range</code>,
+ * <code>GET</code> answers the received ranges in a <code>Range</code> header,
+ * <code>POST</code> stores the file once all bytes have been received and <code>DELETE</code> discards the upload.
+ * Chunks can be sent in any order and in parallel, a failed chunk is simply sent again.
+ * If the SHA-256 digest in the <code>Digest</code> header names content that is already stored, no upload is started
+ * and the song file is created right away.
+ */
+@RestController
+@RequestMapping("/{id}/uploads")
+public class UploadController {
+
+    static final String UPLOAD_CONTENT_TYPE = "X-Upload-Content-Type";
+    static final String UPLOAD_CONTENT_LENGTH = "X-Upload-Content-Length";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d{1,18})-(\\d{1,18})/(\\d{1,18}|\\*)");
+
+    private UploadSessions uploadSessions;
+    private AuthService authService;
+
+    public UploadController(UploadSessions uploadSessions, AuthService authService) {
+        this.uploadSessions = uploadSessions;
+        this.authService = authService;
+    }
+
+    @PostMapping
+    public ResponseEntity<String> createUpload(@PathVariable int id, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
+                                               @RequestHeader(UPLOAD_CONTENT_TYPE) String contentType,
+                                               @RequestHeader(UPLOAD_CONTENT_LENGTH) long length,
+                                               @RequestHeader(value = DigestHeader.NAME, required = false) String digest) {
+        String userId = authService.getUserIdForToken(auth);
+        if (userId == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        if (!contentType.equals("audio/mpeg"))
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        if (length <= 0)
+            return ResponseEntity.badRequest().build();
+        String sha256;
+        try {
+            sha256 = DigestHeader.sha256(digest);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        UploadSession session;
+        try {
+            if (sha256 != null && uploadSessions.link(id, sha256))
+                return ResponseEntity.created(URI.create("/download/" + id)).build();
+            session = uploadSessions.create(id, userId, length, sha256);
+        } catch (MaxUploadSizeExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        if (session == null)
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        return ResponseEntity.created(URI.create("/download/" + id + "/uploads/" + session.getId())).build();
+    }
+
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<String> writeChunk(@PathVariable int id, @PathVariable String uploadId,
+                                             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
+                                             @RequestHeader(HttpHeaders.CONTENT_RANGE) String contentRange, HttpServletRequest request) {
+        String userId = authService.getUserIdForToken(auth);
+        if (userId == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        UploadSession session = uploadSessions.get(uploadId, id, userId);
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        Matcher range = CONTENT_RANGE.matcher(contentRange);
+        if (!range.matches())
+            return ResponseEntity.badRequest().build();
+        long start = Long.parseLong(range.group(1));
+        long end = Long.parseLong(range.group(2));
+        boolean lengthMatches = range.group(3).equals("*") || Long.parseLong(range.group(3)) == session.getLength();
+        if (start > end || end >= session.getLength() || !lengthMatches)
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        if (request.getContentLengthLong() >= 0 && request.getContentLengthLong() != end - start + 1)
+            return ResponseEntity.badRequest().build();
+
+        long written;
+        try {
+            written = uploadSessions.writeChunk(session, start, end, request.getInputStream());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        if (written < 0)
+            return ResponseEntity.notFound().build();
+        // the bytes received before the body ended are kept
+        HttpStatus status = written == end - start + 1 ? HttpStatus.NO_CONTENT : HttpStatus.BAD_REQUEST;
+        return withReceivedRanges(ResponseEntity.status(status), session);
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<String> getUpload(@PathVariable int id, @PathVariable String uploadId,
+                                            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) {
+        String userId = authService.getUserIdForToken(auth);
+        if (userId == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        UploadSession session = uploadSessions.get(uploadId, id, userId);
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        return withReceivedRanges(ResponseEntity.noContent(), session);
+    }
+
+    /**
+     * Stores the uploaded file as the file of the song, answers <code>409 Conflict</code> with the received ranges
+     * if bytes are missing and <code>400 Bad Request</code> if the file does not match the digest given when the upload was
+     * created, the upload is discarded then.
+     */
+    @PostMapping("/{uploadId}")
+    public ResponseEntity<String> completeUpload(@PathVariable int id, @PathVariable String uploadId,
+                                                 @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) {
+        String userId = authService.getUserIdForToken(auth);
+        if (userId == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        UploadSession session = uploadSessions.get(uploadId, id, userId);
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        try {
+            if (!uploadSessions.complete(session, "song-" + id))
+                return withReceivedRanges(ResponseEntity.status(HttpStatus.CONFLICT), session);
+        } catch (DigestMismatchException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return ResponseEntity.created(URI.create("/download/" + id)).build();
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<String> discardUpload(@PathVariable int id, @PathVariable String uploadId,
+                                                @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) {
+        String userId = authService.getUserIdForToken(auth);
+        if (userId == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        UploadSession session = uploadSessions.get(uploadId, id, userId);
+        if (session == null)
+            return ResponseEntity.notFound().build();
+
+        try {
+            uploadSessions.discard(session);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private static ResponseEntity<String> withReceivedRanges(ResponseEntity.HeadersBuilder<?> response, UploadSession session) {
+        String received = session.getReceivedRanges();
+        if (received != null) response.header(HttpHeaders.RANGE, received);
+        return response.header(UPLOAD_CONTENT_LENGTH, String.valueOf(session.getLength())).build();
+    }
+}
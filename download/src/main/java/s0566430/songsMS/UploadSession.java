@@ -0,0 +1,113 @@
+package s0566430.songsMS;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * An upload of a song file that arrives in chunks, possibly in parallel and in any order.
+ * Keeps track of the byte ranges received so far, overlapping and adjacent ranges are merged.
+ * Chunks are written under the read lock and the upload is completed or discarded under the write lock,
+ * so that it never ends while a chunk is being written.
+ */
+class UploadSession {
+
+    private final String id;
+    private final int songId;
+    private final String userId;
+    private final long length;
+    /** the hex encoded SHA-256 digest the client has given for the file or <code>null</code> */
+    private final String expectedDigest;
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** start to inclusive end of the received ranges */
+    private final TreeMap<Long, Long> received = new TreeMap<>();
+    private volatile long lastUsed;
+    private boolean closed;
+
+    UploadSession(String id, int songId, String userId, long length, String expectedDigest, Path file, long now) {
+        this.id = id;
+        this.songId = songId;
+        this.userId = userId;
+        this.length = length;
+        this.expectedDigest = expectedDigest;
+        this.file = file;
+        this.lastUsed = now;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getSongId() {
+        return songId;
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    String getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    ReadWriteLock getLock() {
+        return lock;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch(long now) {
+        lastUsed = now;
+    }
+
+    /** only called while holding a lock, completed or discarded sessions do not accept chunks */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** only called while holding the write lock */
+    void close() {
+        closed = true;
+    }
+
+    synchronized void addReceived(long start, long end) {
+        Map.Entry<Long, Long> before = received.floorEntry(start);
+        if (before != null && before.getValue() >= start - 1) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        for (Map.Entry<Long, Long> after = received.ceilingEntry(start);
+             after != null && after.getKey() <= end + 1; after = received.ceilingEntry(start)) {
+            end = Math.max(end, after.getValue());
+            received.remove(after.getKey());
+        }
+        received.put(start, end);
+    }
+
+    synchronized boolean isComplete() {
+        return received.size() == 1 && received.firstKey() == 0 && received.firstEntry().getValue() == length - 1;
+    }
+
+    /**@return the received ranges in the format of a <code>Range</code> header, <code>null</code> if nothing has been received
+     */
+    synchronized String getReceivedRanges() {
+        if (received.isEmpty()) return null;
+        return received.entrySet().stream()
+                .map(range -> range.getKey() + "-" + range.getValue())
+                .collect(Collectors.joining(",", "bytes=", ""));
+    }
+}
@@ -0,0 +1,218 @@
+package s0566430.songsMS;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * The resumable uploads in progress, backed by the temporary files of {@link StorageService}.
+ * Uploads expire after not receiving a chunk for the configured time and are discarded by a background sweeper.
+ * Every upload allocates its file right away, so the number of uploads is limited in total and per user,
+ * a single user cannot take all places. Sessions are only held in memory, uploads do not survive a restart of the service.
+ */
+@Component
+public class UploadSessions {
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    /** the uploads including reserved places, never exceeds the maximum */
+    private final AtomicInteger places = new AtomicInteger();
+    /** user id to the places taken by the user, users without uploads have no entry */
+    private final Map<String, Integer> userPlaces = new ConcurrentHashMap<>();
+    private final StorageService storageService;
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final int maxSessionsPerUser;
+    private final long sweepIntervalSeconds;
+    private final LongSupplier clock;
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public UploadSessions(StorageService storageService,
+                          @Value("${storage.upload.ttl-seconds:86400}") long ttlSeconds,
+                          @Value("${storage.upload.max-sessions:1000}") int maxSessions,
+                          @Value("${storage.upload.max-sessions-per-user:10}") int maxSessionsPerUser,
+                          @Value("${storage.upload.sweep-interval-seconds:60}") long sweepIntervalSeconds) {
+        this(storageService, ttlSeconds * 1000, maxSessions, maxSessionsPerUser, sweepIntervalSeconds, System::currentTimeMillis);
+    }
+
+    UploadSessions(StorageService storageService, long ttlMillis, int maxSessions, int maxSessionsPerUser,
+                   long sweepIntervalSeconds, LongSupplier clock) {
+        this.storageService = storageService;
+        this.ttlMillis = ttlMillis;
+        this.maxSessions = maxSessions;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    /**@return the new upload or <code>null</code> if too many uploads are in progress, in total or of the user
+     */
+    UploadSession create(int songId, String userId, long length, String expectedDigest) throws IOException {
+        if (!reserve(userId)) {
+            // expired uploads keep their places until they are swept
+            sweep();
+            if (!reserve(userId)) return null;
+        }
+        try {
+            long now = clock.getAsLong();
+            UploadSession session = new UploadSession(UUID.randomUUID().toString(), songId, userId, length,
+                    expectedDigest, storageService.createUpload(length), now);
+            sessions.put(session.getId(), session);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            release(userId);
+            throw e;
+        }
+    }
+
+    /** takes a place before the file is allocated, so that concurrent requests cannot exceed the limits */
+    private boolean reserve(String userId) {
+        boolean[] reserved = new boolean[1];
+        userPlaces.compute(userId, (user, taken) -> {
+            int current = taken == null ? 0 : taken;
+            if (current >= maxSessionsPerUser) return taken;
+            reserved[0] = true;
+            return current + 1;
+        });
+        if (!reserved[0]) return false;
+        while (true) {
+            int current = places.get();
+            if (current >= maxSessions) {
+                releaseUserPlace(userId);
+                return false;
+            }
+            if (places.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private void release(String userId) {
+        places.decrementAndGet();
+        releaseUserPlace(userId);
+    }
+
+    private void releaseUserPlace(String userId) {
+        userPlaces.computeIfPresent(userId, (user, taken) -> taken > 1 ? taken - 1 : null);
+    }
+
+    /** only called while holding the write lock of the open session */
+    private void remove(UploadSession session) {
+        session.close();
+        sessions.remove(session.getId());
+        release(session.getUserId());
+    }
+
+    /**@return true if the song file has been stored from content with the digest that is already stored,
+     * so no upload is needed
+     */
+    boolean link(int songId, String digest) throws IOException {
+        return storageService.link("song-" + songId, digest);
+    }
+
+    /**@return the upload of the song started by the user or <code>null</code> if there is none
+     */
+    UploadSession get(String id, int songId, String userId) {
+        UploadSession session = sessions.get(id);
+        if (session == null || session.getSongId() != songId || !session.getUserId().equals(userId))
+            return null;
+        return session;
+    }
+
+    /**
+     * Writes a chunk of <code>end - start + 1</code> bytes at <code>start</code>, chunks of the same upload can be
+     * written at the same time.
+     * @return the number of bytes written or -1 if the upload has ended in the meantime
+     */
+    long writeChunk(UploadSession session, long start, long end, InputStream content) throws IOException {
+        session.getLock().readLock().lock();
+        try {
+            if (session.isClosed()) return -1;
+            long written = storageService.writeChunk(session.getFile(), start, content, end - start + 1);
+            if (written > 0) session.addReceived(start, start + written - 1);
+            session.touch(clock.getAsLong());
+            return written;
+        } finally {
+            session.getLock().readLock().unlock();
+        }
+    }
+
+    /**@return true if all bytes had been received and the file has been stored, false if the upload is not complete
+     * or has ended in the meantime
+     * @throws DigestMismatchException if the file does not match the digest given when the upload was created,
+     * the upload has ended then
+     */
+    boolean complete(UploadSession session, String filename) throws IOException {
+        session.getLock().writeLock().lock();
+        try {
+            if (session.isClosed() || !session.isComplete()) return false;
+            try {
+                storageService.completeUpload(session.getFile(), filename, session.getExpectedDigest());
+            } finally {
+                // the upload is deleted by the storage service in any case
+                remove(session);
+            }
+            return true;
+        } finally {
+            session.getLock().writeLock().unlock();
+        }
+    }
+
+    void discard(UploadSession session) throws IOException {
+        session.getLock().writeLock().lock();
+        try {
+            if (session.isClosed()) return;
+            remove(session);
+            storageService.deleteUpload(session.getFile());
+        } finally {
+            session.getLock().writeLock().unlock();
+        }
+    }
+
+    /** discards expired uploads, unless a chunk is being written */
+    void sweep() {
+        long now = clock.getAsLong();
+        sessions.values().forEach(session -> {
+            if (session.getLastUsed() + ttlMillis > now || !session.getLock().writeLock().tryLock()) return;
+            try {
+                if (session.isClosed()) return;
+                remove(session);
+                storageService.deleteUpload(session.getFile());
+            } catch (IOException e) {
+                // the file is deleted at the next start at the latest, throwing would stop the sweeper
+            } finally {
+                session.getLock().writeLock().unlock();
+            }
+        });
+    }
+
+    int getSessions() {
+        return sessions.size();
+    }
+}
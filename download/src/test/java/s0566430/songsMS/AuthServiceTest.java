@@ -0,0 +1,109 @@
+package s0566430.songsMS;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+class AuthServiceTest {
+
+    private static final String AUTH_URL = "http://auth/";
+    private static final String TOKEN = "abcde";
+    private static final String UNKNOWN_TOKEN = "fghij";
+    private static final String USER_ID = "user1";
+    private static final String TOKEN_SECRET = "secret";
+
+    private RestTemplate restTemplate;
+    private EurekaClient discoveryClient;
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = Mockito.mock(RestTemplate.class);
+        discoveryClient = Mockito.mock(EurekaClient.class);
+        InstanceInfo instance = Mockito.mock(InstanceInfo.class);
+        Mockito.when(instance.getHomePageUrl()).thenReturn(AUTH_URL);
+        Mockito.when(discoveryClient.getNextServerFromEureka(anyString(), anyBoolean())).thenReturn(instance);
+
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + TOKEN, String.class)).thenReturn(ResponseEntity.ok(USER_ID));
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + UNKNOWN_TOKEN, String.class))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+
+        authService = new AuthService(restTemplate, discoveryClient, new TokenVerifier(TOKEN_SECRET));
+    }
+
+    /** signs like <code>TokenSigner</code> of the auth component */
+    private static String sign(String secret, long expiresAt, String userId) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String payload = encoder.encodeToString((expiresAt + ":" + userId).getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return payload + '.' + encoder.encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenVerifiedLocally() throws Exception {
+        String token = sign(TOKEN_SECRET, System.currentTimeMillis() + 60_000, USER_ID);
+
+        assertEquals(USER_ID, authService.getUserIdForToken(token));
+        assertTrue(authService.doesTokenExist(token));
+        Mockito.verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenExpired() throws Exception {
+        String token = sign(TOKEN_SECRET, System.currentTimeMillis() - 1, USER_ID);
+
+        assertNull(authService.getUserIdForToken(token));
+        Mockito.verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenTampered() throws Exception {
+        String token = sign(TOKEN_SECRET, System.currentTimeMillis() + 60_000, USER_ID);
+        String otherUser = sign(TOKEN_SECRET, System.currentTimeMillis() + 60_000, "user2");
+        String payload = token.substring(0, token.indexOf('.'));
+        String signature = token.substring(token.indexOf('.') + 1);
+
+        assertNull(authService.getUserIdForToken(otherUser.substring(0, otherUser.indexOf('.')) + '.' + signature));
+        assertNull(authService.getUserIdForToken(payload + '.' + signature.substring(1)));
+        assertNull(authService.getUserIdForToken(payload + ".not base64!"));
+        assertNull(authService.getUserIdForToken(sign("other secret", System.currentTimeMillis() + 60_000, USER_ID)));
+        Mockito.verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getUserIdForToken_opaqueTokenResolvedByAuthService() {
+        assertEquals(USER_ID, authService.getUserIdForToken(TOKEN));
+        assertNull(authService.getUserIdForToken(UNKNOWN_TOKEN));
+        assertNull(authService.getUserIdForToken(null));
+
+        Mockito.verify(restTemplate).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+    }
+
+    @Test
+    void getUserIdForToken_noSecret() throws Exception {
+        authService = new AuthService(restTemplate, discoveryClient, new TokenVerifier(""));
+        String token = sign(TOKEN_SECRET, System.currentTimeMillis() + 60_000, USER_ID);
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + token, String.class)).thenReturn(ResponseEntity.ok(USER_ID));
+
+        // without a secret signed tokens are resolved by the auth service like opaque tokens
+        assertEquals(USER_ID, authService.getUserIdForToken(token));
+        Mockito.verify(restTemplate).getForEntity(eq(AUTH_URL + token), eq(String.class));
+    }
+}
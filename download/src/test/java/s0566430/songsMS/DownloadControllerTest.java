@@ -0,0 +1,392 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class DownloadControllerTest {
+
+    private static final String TOKEN = "token";
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final String BOUNDARY = "----boundary4711";
+    private static final Instant MODIFIED = Instant.parse("2021-06-01T12:00:00Z");
+
+    @TempDir
+    Path storage;
+
+    private StorageService storageService;
+    private MockMvc mockMvc;
+    private String etag;
+    private long now = MODIFIED.toEpochMilli();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = new StorageService(storage.toString(), "1MB", 0, () -> now);
+        storageService.init();
+        storageService.save(new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)), "song-1");
+
+        AuthService authService = Mockito.mock(AuthService.class);
+        Mockito.when(authService.doesTokenExist(TOKEN)).thenReturn(true);
+        mockMvc = MockMvcBuilders.standaloneSetup(new DownloadController(storageService, authService)).build();
+
+        etag = mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    void downloadFile_full() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "audio/mpeg"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"song-1\""))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().string(CONTENT));
+        assertEquals("\"" + storageService.getDigest("song-1") + "\"", etag);
+    }
+
+    @Test
+    void downloadFile_head() throws Exception {
+        mockMvc.perform(head("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void downloadFile_singleRange() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=10-15"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-15/36"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 6))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "audio/mpeg"))
+                .andExpect(content().string("abcdef"));
+    }
+
+    @Test
+    void downloadFile_openAndSuffixRanges() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=30-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 30-35/36"))
+                .andExpect(content().string("uvwxyz"));
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 33-35/36"))
+                .andExpect(content().string("xyz"));
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=30-99"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 30-35/36"));
+    }
+
+    @Test
+    void downloadFile_multipleRanges() throws Exception {
+        MvcResult result = mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.RANGE, "bytes=0-1,10-11"))
+                .andExpect(status().isPartialContent())
+                .andReturn();
+
+        String contentType = result.getResponse().getContentType();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="), contentType);
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = result.getResponse().getContentAsString();
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: audio/mpeg\r\nContent-Range: bytes 0-1/36\r\n\r\n01" +
+                "\r\n--" + boundary + "\r\nContent-Type: audio/mpeg\r\nContent-Range: bytes 10-11/36\r\n\r\nab" +
+                "\r\n--" + boundary + "--\r\n", body);
+        assertEquals(body.length(), result.getResponse().getContentLengthLong());
+    }
+
+    @Test
+    void downloadFile_overlappingRangesMerged() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=12-15,10-13,16-17"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-17/36"))
+                .andExpect(content().string("abcdefgh"));
+    }
+
+    @Test
+    void downloadFile_unsatisfiableRange() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=36-40"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */36"));
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=5-2"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    void downloadFile_unsatisfiableRangeOfSeveralDropped() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=40-50,0-1"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-1/36"))
+                .andExpect(content().string("01"));
+    }
+
+    @Test
+    void downloadFile_unknownRangeUnitIgnored() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "seconds=1-2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void downloadFile_ifRangeEtag() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, etag))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("01"));
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, "\"outdated\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, "W/" + etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void downloadFile_ifRangeDate() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, httpDate(MODIFIED)))
+                .andExpect(status().isPartialContent());
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60))))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void downloadFile_ifNoneMatch() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void downloadFile_changedFileNewEtag() throws Exception {
+        storageService.save(new ByteArrayInputStream("changed".getBytes(StandardCharsets.US_ASCII)), "song-1");
+
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string("changed"));
+    }
+
+    @Test
+    void downloadFile_lastModifiedWhenNameWasBound() throws Exception {
+        now = MODIFIED.minusSeconds(3600).toEpochMilli();
+        storageService.save(new ByteArrayInputStream("older".getBytes(StandardCharsets.US_ASCII)), "song-2");
+        now = MODIFIED.plusSeconds(3600).toEpochMilli();
+        // song-1 now shares the object stored before its previous content
+        storageService.save(new ByteArrayInputStream("older".getBytes(StandardCharsets.US_ASCII)), "song-1");
+
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_MODIFIED_SINCE, httpDate(MODIFIED)))
+                .andExpect(status().isOk())
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, MODIFIED.plusSeconds(3600).toEpochMilli()))
+                .andExpect(content().string("older"));
+        mockMvc.perform(get("/2").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, MODIFIED.minusSeconds(3600).toEpochMilli()));
+    }
+
+    @Test
+    void downloadFile_sendfile() throws Exception {
+        storageService.save(new ByteArrayInputStream(new byte[(int) FileDownload.SENDFILE_THRESHOLD + 1]), "song-2");
+
+        MvcResult result = mockMvc.perform(get("/2").header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.RANGE, "bytes=1-")
+                        .requestAttr(FileDownload.SENDFILE_SUPPORTED, true))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, FileDownload.SENDFILE_THRESHOLD))
+                .andExpect(content().string(""))
+                .andReturn();
+
+        assertEquals(storageService.loadFile("song-2").toRealPath().toString(), result.getRequest().getAttribute(FileDownload.SENDFILE_FILENAME));
+        assertEquals(1L, result.getRequest().getAttribute(FileDownload.SENDFILE_START));
+        assertEquals(FileDownload.SENDFILE_THRESHOLD + 1, result.getRequest().getAttribute(FileDownload.SENDFILE_END));
+    }
+
+    @Test
+    void downloadFile_smallFileNotSentWithSendfile() throws Exception {
+        MvcResult result = mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .requestAttr(FileDownload.SENDFILE_SUPPORTED, true))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT))
+                .andReturn();
+
+        assertNull(result.getRequest().getAttribute(FileDownload.SENDFILE_FILENAME));
+    }
+
+    @Test
+    void downloadFile_unauthorized() throws Exception {
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, "invalid"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void downloadFile_notFound() throws Exception {
+        mockMvc.perform(get("/2").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void uploadFile_streamed() throws Exception {
+        mockMvc.perform(upload("/3", part("title", null, null, "Never Gonna Give You Up"),
+                        part("file", "song.mp3", "audio/mpeg", "ID3 data\r\n--not the boundary")))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/download/3"));
+
+        assertEquals("ID3 data\r\n--not the boundary", Files.readString(storageService.loadFile("song-3")));
+        assertStorageContains("song-1", "song-3");
+    }
+
+    @Test
+    void uploadFile_replacesFile() throws Exception {
+        mockMvc.perform(upload("/1", part("file", "song.mp3", "audio/mpeg", "new")))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(content().string("new"));
+    }
+
+    @Test
+    void uploadFile_knownDigestNotReadAgain() throws Exception {
+        String digest = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(CONTENT.getBytes(StandardCharsets.US_ASCII)));
+
+        mockMvc.perform(post("/3").header(HttpHeaders.AUTHORIZATION, TOKEN).header(DigestHeader.NAME, "sha-256=" + digest)
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY).content("not read"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/download/3"));
+
+        mockMvc.perform(get("/3").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(CONTENT));
+        assertEquals(storageService.loadFile("song-1"), storageService.loadFile("song-3"));
+    }
+
+    @Test
+    void uploadFile_unknownDigestReadsBody() throws Exception {
+        String digest = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest("ID3".getBytes(StandardCharsets.US_ASCII)));
+
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "ID3")).header(DigestHeader.NAME, "sha-256=" + digest))
+                .andExpect(status().isCreated());
+        assertStorageContains("song-1", "song-3");
+    }
+
+    @Test
+    void uploadFile_digestMismatch() throws Exception {
+        String digest = Base64.getEncoder().encodeToString(new byte[32]);
+
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "ID3")).header(DigestHeader.NAME, "sha-256=" + digest))
+                .andExpect(status().isBadRequest());
+        assertStorageContains("song-1");
+        assertThrows(FileNotFoundException.class, () -> storageService.loadFile("song-3"));
+    }
+
+    @Test
+    void uploadFile_malformedDigest() throws Exception {
+        for (String digest : new String[]{"sha-256=not base64!", "sha-256=" + Base64.getEncoder().encodeToString(new byte[20]),
+                "SHA-256=", "md5=HUXZLQLMuI/KZ5KDcJPcOA==, sha-256=AAAA"}) {
+            mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "ID3")).header(DigestHeader.NAME, digest))
+                    .andExpect(status().isBadRequest());
+        }
+        assertStorageContains("song-1");
+
+        // digests of other algorithms are ignored
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "ID3")).header(DigestHeader.NAME, "md5=HUXZLQLMuI/KZ5KDcJPcOA=="))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void uploadFile_wrongContentType() throws Exception {
+        mockMvc.perform(upload("/3", part("file", "song.wav", "audio/wav", "RIFF")))
+                .andExpect(status().isUnsupportedMediaType());
+        assertStorageContains("song-1");
+    }
+
+    @Test
+    void uploadFile_missingFilePart() throws Exception {
+        mockMvc.perform(upload("/3", part("title", null, null, "Never Gonna Give You Up")))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void uploadFile_truncatedBody() throws Exception {
+        String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"song.mp3\"\r\n" +
+                "Content-Type: audio/mpeg\r\n\r\nID3 data";
+        mockMvc.perform(post("/3").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY).content(body))
+                .andExpect(status().isBadRequest());
+        assertStorageContains("song-1");
+    }
+
+    @Test
+    void uploadFile_tooLarge() throws Exception {
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "x".repeat(1024 * 1024 + 1))))
+                .andExpect(status().isPayloadTooLarge());
+        assertStorageContains("song-1");
+    }
+
+    @Test
+    void uploadFile_empty() throws Exception {
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "")))
+                .andExpect(status().isInternalServerError());
+        assertStorageContains("song-1");
+    }
+
+    @Test
+    void uploadFile_unauthorized() throws Exception {
+        mockMvc.perform(upload("/3", part("file", "song.mp3", "audio/mpeg", "ID3")).header(HttpHeaders.AUTHORIZATION, "invalid"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private static String part(String name, String filename, String contentType, String content) {
+        return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"" +
+                (filename == null ? "" : "; filename=\"" + filename + "\"") + "\r\n" +
+                (contentType == null ? "" : "Content-Type: " + contentType + "\r\n") + "\r\n" + content + "\r\n";
+    }
+
+    private static MockHttpServletRequestBuilder upload(String path, String... parts) {
+        return post(path).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                .contentType("multipart/form-data; boundary=\"" + BOUNDARY + "\"")
+                .content(String.join("", parts) + "--" + BOUNDARY + "--\r\n");
+    }
+
+    private void assertStorageContains(String... files) throws IOException {
+        try (Stream<Path> stored = Files.list(storage.resolve("index"))) {
+            assertEquals(Set.of(files), stored.map(file -> file.getFileName().toString()).collect(Collectors.toSet()));
+        }
+        try (Stream<Path> stored = Files.list(storage)) {
+            assertEquals(Set.of("index", "objects"), stored.map(file -> file.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,100 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartParserTest {
+
+    private static final String BOUNDARY = "boundary";
+
+    @Test
+    void next_readsParts() throws IOException {
+        MultipartParser parser = parser("preamble\r\n--boundary\r\n" +
+                "Content-Disposition: form-data; name=\"title\"\r\n\r\nNever Gonna Give You Up\r\n" +
+                "--boundary\r\nContent-Disposition: form-data; name=\"file\"; filename=\"song.mp3\"\r\n" +
+                "Content-Type: audio/mpeg\r\n\r\n\r\n--boundar\r\n--boundary--\r\nepilogue", 1);
+
+        MultipartParser.Part title = parser.next();
+        assertEquals("title", title.getName());
+        assertNull(title.getFilename());
+        assertNull(title.getContentType());
+        assertEquals("Never Gonna Give You Up", read(title.getBody()));
+
+        MultipartParser.Part file = parser.next();
+        assertEquals("file", file.getName());
+        assertEquals("song.mp3", file.getFilename());
+        assertEquals("audio/mpeg", file.getContentType());
+        assertEquals("\r\n--boundar", read(file.getBody()));
+
+        assertNull(parser.next());
+        assertNull(parser.next());
+    }
+
+    @Test
+    void next_skipsUnreadParts() throws IOException {
+        MultipartParser parser = parser("--boundary\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nfirst\r\n" +
+                "--boundary\r\nContent-Disposition: form-data; name=\"b\"\r\n\r\nsecond\r\n--boundary--", 3);
+
+        assertEquals("a", parser.next().getName());
+        MultipartParser.Part second = parser.next();
+        assertEquals("b", second.getName());
+        assertEquals("second", read(second.getBody()));
+        assertNull(parser.next());
+    }
+
+    @Test
+    void next_binaryContent() throws IOException {
+        byte[] content = new byte[300_000];
+        new Random(42).nextBytes(content);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes("--boundary\r\nContent-Disposition: form-data; name=\"file\"\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        body.writeBytes(content);
+        body.writeBytes("\r\n--boundary--\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        for (int chunk : new int[]{1, 7, 100_000}) {
+            MultipartParser parser = new MultipartParser(new ChunkedInputStream(body.toByteArray(), chunk), BOUNDARY);
+            assertArrayEquals(content, parser.next().getBody().readAllBytes());
+            assertNull(parser.next());
+        }
+    }
+
+    @Test
+    void next_malformed() {
+        assertThrows(MultipartException.class, () -> read(parser("--boundary\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nfirst", 5).next().getBody()));
+        assertThrows(MultipartException.class, () -> parser("--boundary\r\nContent-Disposition: form-data; name=\"a\"\r\n", 5).next());
+        assertThrows(MultipartException.class, () -> parser("--boundary\r\nno header\r\n\r\n\r\n--boundary--", 5).next());
+        assertThrows(MultipartException.class, () -> parser("no boundary at all", 5).next());
+    }
+
+    private static MultipartParser parser(String body, int chunk) {
+        return new MultipartParser(new ChunkedInputStream(body.getBytes(StandardCharsets.US_ASCII), chunk), BOUNDARY);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+
+    /** returns at most <code>chunk</code> bytes per read, like a slow connection */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        ChunkedInputStream(byte[] content, int chunk) {
+            super(content);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
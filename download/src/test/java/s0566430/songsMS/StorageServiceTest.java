@@ -0,0 +1,162 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageServiceTest {
+
+    @TempDir
+    Path storage;
+
+    private static final long GRACE = 60_000;
+
+    private long now = 1000;
+    private StorageService storageService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = newStorageService();
+    }
+
+    private StorageService newStorageService() throws Exception {
+        StorageService storageService = new StorageService(storage.toString(), "1MB", GRACE, () -> now);
+        storageService.init();
+        return storageService;
+    }
+
+    private void save(String content, String filename) throws Exception {
+        storageService.save(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), filename);
+    }
+
+    private long objects() throws Exception {
+        try (Stream<Path> objects = Files.walk(storage.resolve("objects"))) {
+            return objects.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void save_sameContentStoredOnce() throws Exception {
+        save("ID3", "song-1");
+        save("ID3", "song-2");
+
+        assertEquals(storageService.getDigest("song-1"), storageService.getDigest("song-2"));
+        assertEquals(storageService.loadFile("song-1"), storageService.loadFile("song-2"));
+        assertEquals(1, objects());
+        // the SHA-256 digest of "ID3"
+        assertEquals(storage.resolve("objects/04/11/041149186b23a9502aea5a4e81bbc9620d2b4b76b4bad94e36c744abcf9d3771"),
+                storageService.loadFile("song-1"));
+    }
+
+    @Test
+    void save_replacedContentDeletedWhenUnreferenced() throws Exception {
+        save("ID3", "song-1");
+        save("ID3", "song-2");
+        Path shared = storageService.loadFile("song-1");
+
+        save("new", "song-1");
+        save("new", "song-2");
+        // downloads that resolved the name before can still open the object
+        storageService.sweep();
+        assertTrue(Files.exists(shared));
+        assertEquals(2, objects());
+
+        now += GRACE;
+        storageService.sweep();
+        assertFalse(Files.exists(shared));
+        assertEquals(1, objects());
+    }
+
+    @Test
+    void save_unreferencedContentKeptWhenStoredAgain() throws Exception {
+        save("ID3", "song-1");
+        Path object = storageService.loadFile("song-1");
+        save("new", "song-1");
+
+        now += GRACE / 2;
+        save("ID3", "song-2");
+        now += GRACE;
+        storageService.sweep();
+
+        assertEquals(object, storageService.loadFile("song-2"));
+        assertEquals("ID3", Files.readString(object));
+        assertEquals(2, objects());
+    }
+
+    @Test
+    void save_digestMismatch() throws Exception {
+        save("ID3", "song-1");
+        String digest = storageService.getDigest("song-1");
+
+        assertThrows(DigestMismatchException.class, () -> storageService.save(
+                new ByteArrayInputStream("new".getBytes(StandardCharsets.US_ASCII)), "song-1", digest));
+        assertEquals(digest, storageService.getDigest("song-1"));
+        assertEquals(1, objects());
+        storageService.save(new ByteArrayInputStream("ID3".getBytes(StandardCharsets.US_ASCII)), "song-2", digest);
+        assertEquals(digest, storageService.getDigest("song-2"));
+    }
+
+    @Test
+    void loadStoredFile_lastModifiedWhenNameWasBound() throws Exception {
+        save("ID3", "song-1");
+        now += 5000;
+        save("ID3", "song-2");
+
+        assertEquals(1000, storageService.loadStoredFile("song-1").getLastModified());
+        assertEquals(6000, storageService.loadStoredFile("song-2").getLastModified());
+        storageService = newStorageService();
+        assertEquals(6000, storageService.loadStoredFile("song-2").getLastModified());
+    }
+
+    @Test
+    void link() throws Exception {
+        save("ID3", "song-1");
+
+        assertTrue(storageService.link("song-2", storageService.getDigest("song-1")));
+        assertEquals("ID3", Files.readString(storageService.loadFile("song-2")));
+        assertFalse(storageService.link("song-3", "0".repeat(64)));
+        assertThrows(FileNotFoundException.class, () -> storageService.loadFile("song-3"));
+    }
+
+    @Test
+    void init_readsIndex() throws Exception {
+        save("ID3", "song-1");
+        save("ID3", "song-2");
+
+        storageService = newStorageService();
+        assertEquals("ID3", Files.readString(storageService.loadFile("song-1")));
+        save("new", "song-1");
+        save("new", "song-2");
+        now += GRACE;
+        storageService.sweep();
+        assertEquals(1, objects());
+    }
+
+    @Test
+    void init_movesFilesOfPreviousLayout() throws Exception {
+        Files.writeString(storage.resolve("song-1"), "ID3");
+        Files.writeString(storage.resolve("song-2"), "ID3");
+        Files.writeString(storage.resolve("upload-4711.tmp"), "ID");
+        Path orphan = storage.resolve("objects/00/00/" + "0".repeat(64));
+        Files.createDirectories(orphan.getParent());
+        Files.writeString(orphan, "lost");
+
+        storageService = newStorageService();
+
+        assertEquals("ID3", Files.readString(storageService.loadFile("song-2")));
+        assertEquals(storageService.loadFile("song-1"), storageService.loadFile("song-2"));
+        assertFalse(Files.exists(storage.resolve("song-1")));
+        assertFalse(Files.exists(storage.resolve("upload-4711.tmp")));
+        assertFalse(Files.exists(orphan));
+        assertEquals(1, objects());
+    }
+}
@@ -0,0 +1,241 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class UploadControllerTest {
+
+    private static final String TOKEN = "token";
+    private static final String OTHER_TOKEN = "other";
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path storage;
+
+    private StorageService storageService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = new StorageService(storage.toString(), "1KB", 0, System::currentTimeMillis);
+        storageService.init();
+        UploadSessions uploadSessions = new UploadSessions(storageService, 60_000, 3, 2, 60, System::currentTimeMillis);
+
+        AuthService authService = Mockito.mock(AuthService.class);
+        Mockito.when(authService.getUserIdForToken(TOKEN)).thenReturn("mmuster");
+        Mockito.when(authService.getUserIdForToken(OTHER_TOKEN)).thenReturn("eschuler");
+        mockMvc = MockMvcBuilders.standaloneSetup(new UploadController(uploadSessions, authService)).build();
+    }
+
+    private String createUpload(long length) throws Exception {
+        return mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, length))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION).replace("/download", "");
+    }
+
+    private void putChunk(String location, int start, int end) throws Exception {
+        mockMvc.perform(chunk(location, start, end, CONTENT.substring(start, end + 1)))
+                .andExpect(status().isNoContent());
+    }
+
+    private static MockHttpServletRequestBuilder chunk(String location, int start, int end, String content) {
+        return put(location).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + CONTENT.length())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM).content(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void upload_chunksInAnyOrder() throws Exception {
+        String location = createUpload(CONTENT.length());
+        assertTrue(location.startsWith("/1/uploads/"), location);
+
+        putChunk(location, 20, 35);
+        putChunk(location, 0, 9);
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.RANGE, "bytes=0-9,20-35"))
+                .andExpect(header().string(UploadController.UPLOAD_CONTENT_LENGTH, "36"));
+
+        putChunk(location, 8, 21);
+        mockMvc.perform(post(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/download/1"));
+
+        assertEquals(CONTENT, Files.readString(storageService.loadFile("song-1")));
+        assertUploadsDeleted();
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void completeUpload_missingBytes() throws Exception {
+        String location = createUpload(CONTENT.length());
+        putChunk(location, 0, 9);
+
+        mockMvc.perform(post(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isConflict())
+                .andExpect(header().string(HttpHeaders.RANGE, "bytes=0-9"));
+        assertNull(storageService.getDigest("song-1"));
+    }
+
+    @Test
+    void getUpload_nothingReceived() throws Exception {
+        String location = createUpload(CONTENT.length());
+
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNoContent())
+                .andExpect(header().doesNotExist(HttpHeaders.RANGE));
+    }
+
+    @Test
+    void writeChunk_invalidRanges() throws Exception {
+        String location = createUpload(CONTENT.length());
+
+        mockMvc.perform(chunk(location, 30, 36, "uvwxyz!"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        mockMvc.perform(chunk(location, 5, 4, ""))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        mockMvc.perform(chunk(location, 0, 9, "01234").header(HttpHeaders.CONTENT_LENGTH, 5))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put(location).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes 0-9/99").content("0123456789"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        mockMvc.perform(put(location).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.CONTENT_RANGE, "0-9").content("0123456789"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put(location).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes 0-9/*").content("0123456789"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void createUpload_invalid() throws Exception {
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/wav")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, 10))
+                .andExpect(status().isUnsupportedMediaType());
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, 0))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, 1025))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void createUpload_tooManyUploads() throws Exception {
+        createUpload(10);
+        createUpload(10);
+
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, 10))
+                .andExpect(status().isTooManyRequests());
+        // the limit is per user
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, OTHER_TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, 10))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void discardUpload() throws Exception {
+        String location = createUpload(CONTENT.length());
+        putChunk(location, 0, 9);
+
+        mockMvc.perform(delete(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotFound());
+        assertUploadsDeleted();
+    }
+
+    @Test
+    void createUpload_knownDigest() throws Exception {
+        storageService.save(new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)), "song-2");
+        String digest = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(CONTENT.getBytes(StandardCharsets.US_ASCII)));
+
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, CONTENT.length())
+                        .header(DigestHeader.NAME, "sha-256=" + digest))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/download/1"));
+
+        assertEquals(storageService.loadFile("song-2"), storageService.loadFile("song-1"));
+        assertUploadsDeleted();
+    }
+
+    @Test
+    void completeUpload_digestMismatch() throws Exception {
+        String digest = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest("other".getBytes(StandardCharsets.US_ASCII)));
+        String location = mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, CONTENT.length())
+                        .header(DigestHeader.NAME, "sha-256=" + digest))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION).replace("/download", "");
+        putChunk(location, 0, 35);
+
+        mockMvc.perform(post(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        assertNull(storageService.getDigest("song-1"));
+        assertUploadsDeleted();
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void createUpload_malformedDigest() throws Exception {
+        mockMvc.perform(post("/1/uploads").header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .header(UploadController.UPLOAD_CONTENT_TYPE, "audio/mpeg")
+                        .header(UploadController.UPLOAD_CONTENT_LENGTH, CONTENT.length())
+                        .header(DigestHeader.NAME, "sha-256=" + Base64.getEncoder().encodeToString(new byte[31])))
+                .andExpect(status().isBadRequest());
+        assertUploadsDeleted();
+    }
+
+    @Test
+    void upload_otherUserOrSong() throws Exception {
+        String location = createUpload(CONTENT.length());
+
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, OTHER_TOKEN))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(location.replace("/1/", "/2/")).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(location).header(HttpHeaders.AUTHORIZATION, "invalid"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private void assertUploadsDeleted() throws IOException {
+        try (var uploads = Files.newDirectoryStream(storage, "upload-*")) {
+            assertFalse(uploads.iterator().hasNext());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package s0566430.songsMS;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSessionsTest {
+
+    @TempDir
+    Path storage;
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private StorageService storageService;
+    private UploadSessions sessions;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = new StorageService(storage.toString(), "10MB", 0, now::get);
+        storageService.init();
+        sessions = new UploadSessions(storageService, 60_000, 10, 4, 60, now::get);
+    }
+
+    @Test
+    void writeChunk_parallel() throws Exception {
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        int chunkSize = 256 * 1024;
+        UploadSession session = sessions.create(1, "mmuster", content.length, null);
+
+        List<Integer> starts = new ArrayList<>();
+        for (int start = 0; start < content.length; start += chunkSize) starts.add(start);
+        Collections.shuffle(starts, new Random(42));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> written = new ArrayList<>();
+            for (int start : starts)
+                written.add(executor.submit(() -> sessions.writeChunk(session, start, start + chunkSize - 1,
+                        new ByteArrayInputStream(content, start, chunkSize))));
+            for (Future<Long> chunk : written) assertEquals(chunkSize, chunk.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("bytes=0-" + (content.length - 1), session.getReceivedRanges());
+        assertTrue(sessions.complete(session, "song-1"));
+        assertArrayEquals(content, Files.readAllBytes(storageService.loadFile("song-1")));
+        assertEquals(-1, sessions.writeChunk(session, 0, 0, new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    void writeChunk_truncatedChunkKept() throws Exception {
+        UploadSession session = sessions.create(1, "mmuster", 100, null);
+
+        assertEquals(3, sessions.writeChunk(session, 10, 19, new ByteArrayInputStream(new byte[3])));
+
+        assertEquals("bytes=10-12", session.getReceivedRanges());
+    }
+
+    @Test
+    void addReceived_merges() {
+        UploadSession session = new UploadSession("id", 1, "mmuster", 100, null, storage.resolve("upload"), 0);
+
+        session.addReceived(50, 59);
+        session.addReceived(10, 19);
+        session.addReceived(30, 39);
+        assertEquals("bytes=10-19,30-39,50-59", session.getReceivedRanges());
+        session.addReceived(20, 29);
+        assertEquals("bytes=10-39,50-59", session.getReceivedRanges());
+        session.addReceived(35, 55);
+        assertEquals("bytes=10-59", session.getReceivedRanges());
+        session.addReceived(0, 99);
+        assertEquals("bytes=0-99", session.getReceivedRanges());
+        assertTrue(session.isComplete());
+    }
+
+    @Test
+    void create_limitedPerUserAndInTotal() throws Exception {
+        List<UploadSession> created = new ArrayList<>();
+        for (int i = 0; i < 4; i++) created.add(sessions.create(1, "mmuster", 100, null));
+        assertNull(sessions.create(1, "mmuster", 100, null));
+
+        for (int i = 0; i < 4; i++) assertNotNull(sessions.create(1, "eschuler", 100, null));
+        assertNotNull(sessions.create(1, "jdoe", 100, null));
+        assertNotNull(sessions.create(1, "jdoe", 100, null));
+        assertNull(sessions.create(1, "jdoe", 100, null));
+        assertEquals(10, sessions.getSessions());
+
+        // ended uploads free their places
+        sessions.discard(created.get(0));
+        assertEquals(100, sessions.writeChunk(created.get(1), 0, 99, new ByteArrayInputStream(new byte[100])));
+        assertTrue(sessions.complete(created.get(1), "song-1"));
+        assertNotNull(sessions.create(1, "mmuster", 100, null));
+        assertNotNull(sessions.create(1, "jdoe", 100, null));
+        assertNull(sessions.create(1, "jdoe", 100, null));
+
+        // expired uploads are swept to make room
+        now.addAndGet(60_000);
+        assertNotNull(sessions.create(1, "jdoe", 100, null));
+        assertEquals(1, sessions.getSessions());
+    }
+
+    @Test
+    void create_concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<UploadSession>> created = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String userId = "user" + i % 4;
+                created.add(executor.submit(() -> sessions.create(1, userId, 100, null)));
+            }
+            int successful = 0;
+            for (Future<UploadSession> session : created) if (session.get() != null) successful++;
+            assertEquals(10, successful);
+            assertEquals(10, sessions.getSessions());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void sweep_discardsExpiredUploads() throws Exception {
+        UploadSession expired = sessions.create(1, "mmuster", 100, null);
+        now.addAndGet(30_000);
+        UploadSession active = sessions.create(2, "mmuster", 100, null);
+        now.addAndGet(30_000);
+
+        sessions.sweep();
+
+        assertNull(sessions.get(expired.getId(), 1, "mmuster"));
+        assertFalse(Files.exists(expired.getFile()));
+        assertSame(active, sessions.get(active.getId(), 2, "mmuster"));
+        assertEquals(1, sessions.getSessions());
+    }
+}
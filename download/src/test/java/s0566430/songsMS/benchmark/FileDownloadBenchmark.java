@@ -0,0 +1,148 @@
+package s0566430.songsMS.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import s0566430.songsMS.DownloadApp;
+import s0566430.songsMS.StorageService;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a song file over HTTP from an embedded Tomcat, reported as downloads per second.
+ * {@link #fileDownload} is the <code>DownloadController</code> path, which hands bodies of 48KB and more to sendfile,
+ * {@link #resourceDownload} the previous way of returning a <code>UrlResource</code> that Spring copies through the JVM.
+ * After every iteration the CPU time of the process per GB served is printed, it includes the client reading the responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDownloadBenchmark {
+
+    private static final String SECRET = "benchmark";
+
+    @Param({"16384", "1048576", "16777216"})
+    private int fileSize;
+
+    private Path storage;
+    private ConfigurableApplicationContext context;
+    private String baseUrl;
+    private String token;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private long bytes;
+    private long cpuNanos;
+
+    /** the previous download endpoint without the token check, only registered for the benchmark */
+    @RequestMapping("/resource")
+    @ResponseBody
+    public static class ResourceDownloads {
+
+        private final StorageService storageService;
+
+        public ResourceDownloads(StorageService storageService) {
+            this.storageService = storageService;
+        }
+
+        @GetMapping("/{id}")
+        public ResponseEntity<Resource> download(@PathVariable int id) throws IOException {
+            Resource file = storageService.load("song-" + id);
+            return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + file.getFilename() + "\"").body(file);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException, GeneralSecurityException {
+        storage = Files.createTempDirectory("downloads");
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        Files.write(storage.resolve("song-1"), content);
+
+        // arguments, so that they take precedence over application.properties
+        context = new SpringApplicationBuilder(DownloadApp.class, ResourceDownloads.class)
+                .run("--server.port=0", "--storage.location=" + storage, "--auth.token.secret=" + SECRET,
+                        "--eureka.client.register-with-eureka=false", "--eureka.client.fetch-registry=false",
+                        "--spring.main.banner-mode=off", "--logging.level.root=warn");
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        token = signedToken();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(storage);
+    }
+
+    @Setup(Level.Iteration)
+    public void startMeasuring() {
+        bytes = 0;
+        cpuNanos = processCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCpuPerGigabyte() {
+        double gigabytes = bytes / 1e9;
+        System.out.printf("%ncpu: %.0f ms per GB served%n", (processCpuTime() - cpuNanos) / 1e6 / gigabytes);
+    }
+
+    @Benchmark
+    public long fileDownload() throws IOException {
+        return download("/1");
+    }
+
+    @Benchmark
+    public long resourceDownload() throws IOException {
+        return download("/resource/1");
+    }
+
+    private long download(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestProperty(HttpHeaders.AUTHORIZATION, token);
+        long read = 0;
+        try (InputStream in = connection.getInputStream()) {
+            for (int n; (n = in.read(buffer)) >= 0; ) read += n;
+        }
+        if (read != fileSize) throw new IllegalStateException("received " + read + " of " + fileSize + " bytes");
+        bytes += read;
+        return read;
+    }
+
+    /** a token in the format of <code>TokenSigner</code>, verified locally by the download service */
+    private static String signedToken() throws GeneralSecurityException {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String payload = encoder.encodeToString((System.currentTimeMillis() + 3_600_000 + ":benchmark").getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return payload + "." + encoder.encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
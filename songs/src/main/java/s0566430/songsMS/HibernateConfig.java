@@ -10,6 +10,7 @@ import org.springframework.orm.hibernate5.HibernateTransactionManager;
 import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import s0566430.songsMS.model.PooledSequenceGenerator;
 
 import javax.sql.DataSource;
 import java.util.Properties;
@@ -38,6 +39,9 @@ public class HibernateConfig {
         dataSource.setUrl(env.getProperty("jdbc.url"));
         dataSource.setUsername(env.getProperty("jdbc.username"));
         dataSource.setPassword(env.getProperty("jdbc.password"));
+        String connectionProperties = env.getProperty("jdbc.connectionProperties", "");
+        if (!connectionProperties.isEmpty())
+            dataSource.setConnectionProperties(connectionProperties);
         return dataSource;
     }
 
@@ -59,6 +63,25 @@ public class HibernateConfig {
         hibernateProperties.setProperty("hibernate.c3p0.max_size", "8");
         hibernateProperties.setProperty("hibernate.c3p0.timeout", "1800");
         hibernateProperties.setProperty("hibernate.c3p0.max_statements", "50");
+
+        // ids are taken from sequences in blocks, see PooledSequenceGenerator
+        hibernateProperties.setProperty(PooledSequenceGenerator.ALLOCATION_SIZE_SETTING,
+                env.getProperty(PooledSequenceGenerator.ALLOCATION_SIZE_SETTING, String.valueOf(PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE)));
+
+        // inserts of the batch import are sent in JDBC batches, see SongDao.saveSongs
+        hibernateProperties.setProperty("hibernate.jdbc.batch_size", env.getProperty("hibernate.jdbc.batch_size", "50"));
+        hibernateProperties.setProperty("hibernate.order_inserts", "true");
+
+        // lazy collections are loaded for all lists of a @BatchSize with one query each
+        hibernateProperties.setProperty("hibernate.batch_fetch_style", "DYNAMIC");
+
+        // second-level and query cache, regions are configured in ehcache.xml
+        hibernateProperties.setProperty("hibernate.cache.use_second_level_cache", env.getProperty("hibernate.cache.use_second_level_cache", "false"));
+        hibernateProperties.setProperty("hibernate.cache.use_query_cache", env.getProperty("hibernate.cache.use_query_cache", "false"));
+        hibernateProperties.setProperty("hibernate.cache.region.factory_class", "jcache");
+        hibernateProperties.setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        hibernateProperties.setProperty("hibernate.javax.cache.uri", env.getProperty("hibernate.javax.cache.uri", "ehcache.xml"));
+        hibernateProperties.setProperty("hibernate.generate_statistics", env.getProperty("hibernate.generate_statistics", "false"));
         return hibernateProperties;
     }
 }
@@ -0,0 +1,24 @@
+package s0566430.songsMS;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import s0566430.songsMS.controller.AuthService;
+import s0566430.songsMS.controller.AuthenticatedUserArgumentResolver;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private AuthService authService;
+
+    public WebConfig(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new AuthenticatedUserArgumentResolver(authService));
+    }
+}
@@ -2,6 +2,7 @@ package s0566430.songsMS.controller;
 
 import com.netflix.discovery.EurekaClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
@@ -11,12 +12,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
-import s0566430.songsMS.model.SongListsXmlRoot;
-import s0566430.songsMS.model.SongsXmlRoot;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -28,28 +24,22 @@ public class AuthService {
 
     private RestTemplate restTemplate;
     private EurekaClient discoveryClient;
+    private TokenCache tokenCache;
+    private TokenVerifier tokenVerifier;
 
-    public AuthService(RestTemplate restTemplate, EurekaClient discoveryClient) {
-        this.restTemplate = restTemplate;
-        this.discoveryClient = discoveryClient;
-    }
-
-    static String convertSongToXml(SongsXmlRoot songs) throws JAXBException {
-        return convertToXml(songs, SongsXmlRoot.class);
+    @Autowired
+    public AuthService(RestTemplate restTemplate, EurekaClient discoveryClient, TokenVerifier tokenVerifier,
+                       @Value("${auth.cache.max-size:10000}") int cacheMaxSize,
+                       @Value("${auth.cache.ttl-seconds:60}") long cacheTtlSeconds,
+                       @Value("${auth.cache.negative-ttl-seconds:5}") long cacheNegativeTtlSeconds) {
+        this(restTemplate, discoveryClient, tokenVerifier, new TokenCache(cacheMaxSize, cacheTtlSeconds * 1000, cacheNegativeTtlSeconds * 1000));
     }
 
-    static String convertSongListToXml(SongListsXmlRoot songLists) throws JAXBException {
-        return convertToXml(songLists, SongListsXmlRoot.class);
-    }
-
-    private static String convertToXml(Object jaxbElement, Class<?> class_) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(class_);
-        Marshaller marshaller = context.createMarshaller();
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-
-        StringWriter sw = new StringWriter();
-        marshaller.marshal(jaxbElement, sw);
-        return sw.toString();
+    AuthService(RestTemplate restTemplate, EurekaClient discoveryClient, TokenVerifier tokenVerifier, TokenCache tokenCache) {
+        this.restTemplate = restTemplate;
+        this.discoveryClient = discoveryClient;
+        this.tokenVerifier = tokenVerifier;
+        this.tokenCache = tokenCache;
     }
 
     static String getStackTrace(Throwable t) {
@@ -58,7 +48,24 @@ public class AuthService {
         return sw.toString();
     }
 
+    /**@param token the auth token sent by the client
+     * @return the id of the user the token belongs to or <code>null</code> if the token is unknown
+     */
     String getUserIdForToken(String token) {
+        if (token == null) return null;
+        // signed tokens are verified locally, only opaque tokens have to be resolved by the auth service
+        if (tokenVerifier.isEnabled() && TokenVerifier.isSignedToken(token))
+            return tokenVerifier.verify(token);
+
+        TokenCache.Entry cached = tokenCache.get(token);
+        if (cached != null) return cached.userId;
+
+        String userId = requestUserIdForToken(token);
+        tokenCache.put(token, userId);
+        return userId;
+    }
+
+    private String requestUserIdForToken(String token) {
         String url = discoveryClient.getNextServerFromEureka(AUTH_SERVICE_NAME, false).getHomePageUrl()
                 + token;
         try {
@@ -69,12 +76,25 @@ public class AuthService {
         }
     }
 
-    boolean doesTokenExist(String token) {
-        return getUserIdForToken(token) != null;
+    /** removes a token from the local cache, e.g. after a logout, so the next request asks the auth service again */
+    public void invalidateToken(String token) {
+        tokenCache.invalidate(token);
+    }
+
+    public void invalidateAllTokens() {
+        tokenCache.invalidateAll();
     }
 
-    boolean doesTokenMatchUserId(String token, String userId) {
-        return getUserIdForToken(token).equals(userId);
+    public long getTokenCacheHits() {
+        return tokenCache.getHits();
+    }
+
+    public long getTokenCacheMisses() {
+        return tokenCache.getMisses();
+    }
+
+    boolean doesTokenExist(String token) {
+        return getUserIdForToken(token) != null;
     }
 
     boolean doesUserIdExist(String userId) {
@@ -0,0 +1,29 @@
+package s0566430.songsMS.controller;
+
+/**
+ * The user a request has been authenticated as. Controller methods declare a parameter of this type
+ * to receive it; it is <code>null</code> if the request carries no valid token.
+ * @see AuthenticatedUserArgumentResolver
+ */
+public class AuthenticatedUser {
+
+    private final String token;
+    private final String userId;
+
+    public AuthenticatedUser(String token, String userId) {
+        this.token = token;
+        this.userId = userId;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public boolean isOwnerOf(String ownerId) {
+        return userId.equals(ownerId);
+    }
+}
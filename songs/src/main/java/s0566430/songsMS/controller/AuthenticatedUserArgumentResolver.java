@@ -0,0 +1,48 @@
+package s0566430.songsMS.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves {@link AuthenticatedUser} controller parameters from the Authorization header.
+ * The token is resolved at most once per request, the result is kept as a request attribute.
+ */
+public class AuthenticatedUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    static final String ATTRIBUTE_NAME = AuthenticatedUser.class.getName();
+    private static final Object UNAUTHENTICATED = new Object();
+
+    private AuthService authService;
+
+    public AuthenticatedUserArgumentResolver(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getParameterType().equals(AuthenticatedUser.class);
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Object resolved = webRequest.getAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+        if (resolved == null) {
+            resolved = resolve(webRequest.getHeader(HttpHeaders.AUTHORIZATION));
+            webRequest.setAttribute(ATTRIBUTE_NAME, resolved, RequestAttributes.SCOPE_REQUEST);
+        }
+        return resolved == UNAUTHENTICATED ? null : resolved;
+    }
+
+    private Object resolve(String token) {
+        if (token == null) return UNAUTHENTICATED;
+        String userId = authService.getUserIdForToken(token);
+        if (userId == null) return UNAUTHENTICATED;
+        return new AuthenticatedUser(token, userId);
+    }
+}
@@ -0,0 +1,63 @@
+package s0566430.songsMS.controller;
+
+import org.springframework.http.MediaType;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongList;
+
+/**
+ * Validators for conditional GET requests, derived from the id, version and modification time of the entities,
+ * so that they can be checked without serializing the response. Versions start at 0 for every entity, the id and the
+ * kind of entity keep an ETag from validating another resource.
+ * The songs of a list are part of its representation, so their versions are part of the list's ETag as well.
+ * JSON and XML representations have different ETags.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    /**@return the ETag of the song or <code>null</code> if the media type is not supported
+     */
+    static String of(Song song, String accept) {
+        String representation = representation(accept);
+        if (representation == null) return null;
+        return "song-" + song.getId() + "-" + song.getVersion() + "-" + representation;
+    }
+
+    /**@return the ETag of the list or <code>null</code> if the media type is not supported
+     */
+    static String of(SongList songList, String accept) {
+        String representation = representation(accept);
+        if (representation == null) return null;
+        long songs = 1;
+        for (Song song : songList.getSongs())
+            songs = 31 * (31 * songs + song.getId()) + song.getVersion();
+        return "list-" + songList.getListId() + "-" + songList.getVersion() + "-" + Long.toHexString(songs) + "-" + representation;
+    }
+
+    /**@return the modification time or -1 if it is unknown
+     */
+    static long lastModified(Song song) {
+        return song.getModifiedAt() > 0 ? song.getModifiedAt() : -1;
+    }
+
+    /**@return the latest modification time of the list and its songs or -1 if it is unknown
+     */
+    static long lastModified(SongList songList) {
+        long lastModified = songList.getModifiedAt();
+        for (Song song : songList.getSongs())
+            lastModified = Math.max(lastModified, song.getModifiedAt());
+        return lastModified > 0 ? lastModified : -1;
+    }
+
+    private static String representation(String accept) {
+        switch (accept) {
+            case MediaType.APPLICATION_JSON_VALUE:
+                return "json";
+            case MediaType.APPLICATION_XML_VALUE:
+                return "xml";
+            default:
+                return null;
+        }
+    }
+}
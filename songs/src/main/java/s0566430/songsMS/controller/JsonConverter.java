@@ -0,0 +1,116 @@
+package s0566430.songsMS.controller;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import s0566430.songsMS.model.ImportResult;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Converts songs and song lists from and to JSON with readers and writers that are built once for their type,
+ * so that no type has to be resolved per request. Readers and writers are immutable and thread-safe.
+ * With <code>songs.json.blackbird</code> the Blackbird module replaces reflective property access with generated lambdas.
+ */
+@Component
+public class JsonConverter {
+
+    private final ObjectReader songReader;
+    private final ObjectReader songListReader;
+    private final ObjectWriter songWriter;
+    private final ObjectWriter songsWriter;
+    private final ObjectWriter songListWriter;
+    private final ObjectWriter songListsWriter;
+    private final ObjectWriter songListSummariesWriter;
+    private final ObjectWriter importResultsWriter;
+
+    public JsonConverter(@Value("${songs.json.blackbird:false}") boolean blackbird) {
+        ObjectMapper mapper = new ObjectMapper();
+        if (blackbird) mapper.registerModule(new BlackbirdModule());
+        this.songReader = mapper.readerFor(Song.class);
+        this.songListReader = mapper.readerFor(SongList.class);
+        this.songWriter = mapper.writerFor(Song.class);
+        this.songsWriter = mapper.writerFor(new TypeReference<List<Song>>() {});
+        this.songListWriter = mapper.writerFor(SongList.class);
+        this.songListsWriter = mapper.writerFor(new TypeReference<List<SongList>>() {});
+        this.songListSummariesWriter = mapper.writerFor(new TypeReference<List<SongListSummary>>() {});
+        this.importResultsWriter = mapper.writerFor(new TypeReference<List<ImportResult>>() {});
+    }
+
+    public Song readSong(String json) throws JsonProcessingException {
+        return songReader.readValue(json);
+    }
+
+    public Song readSong(JsonNode node) throws JsonProcessingException {
+        return songReader.treeToValue(node, Song.class);
+    }
+
+    public JsonNode readTree(String json) throws JsonProcessingException {
+        return songReader.readTree(json);
+    }
+
+    /**@param parser positioned at the first token of the value
+     * @return the value, the parser is left at its last token
+     */
+    public JsonNode readTree(JsonParser parser) throws IOException {
+        return songReader.readTree(parser);
+    }
+
+    /**@return a parser for reading a large body value by value
+     */
+    public JsonParser createParser(InputStream in) throws IOException {
+        return songReader.createParser(in);
+    }
+
+    public SongList readSongList(String json) throws JsonProcessingException {
+        return songListReader.readValue(json);
+    }
+
+    public String writeSong(Song song) throws JsonProcessingException {
+        return songWriter.writeValueAsString(song);
+    }
+
+    public String writeSongs(List<Song> songs) throws JsonProcessingException {
+        return songsWriter.writeValueAsString(songs);
+    }
+
+    public String writeSongList(SongList songList) throws JsonProcessingException {
+        return songListWriter.writeValueAsString(songList);
+    }
+
+    public String writeSongLists(List<SongList> songLists) throws JsonProcessingException {
+        return songListsWriter.writeValueAsString(songLists);
+    }
+
+    public String writeSongListSummaries(List<SongListSummary> summaries) throws JsonProcessingException {
+        return songListSummariesWriter.writeValueAsString(summaries);
+    }
+
+    public String writeImportResults(List<ImportResult> results) throws JsonProcessingException {
+        return importResultsWriter.writeValueAsString(results);
+    }
+
+    /**@return the writer for single songs, e.g. for streaming a listing song by song
+     */
+    public ObjectWriter getSongWriter() {
+        return songWriter;
+    }
+
+    /**@return the writer for single song lists, e.g. for streaming a listing list by list
+     */
+    public ObjectWriter getSongListWriter() {
+        return songListWriter;
+    }
+}
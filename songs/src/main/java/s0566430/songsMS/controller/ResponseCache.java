@@ -0,0 +1,107 @@
+package s0566430.songsMS.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of rendered response bodies of single songs and song lists, keyed by resource and media type.
+ * Each body is stored as a byte array together with the ETag it was rendered for and is only returned
+ * for the same ETag, so a body is never served after its resource has changed, even if an invalidation is missed.
+ * The representation does not depend on the requesting user, access checks are done before the lookup.
+ * When the total size of the bodies exceeds the limit, the least recently used bodies are evicted.
+ */
+@Component
+public class ResponseCache {
+
+    enum Kind { SONG, SONG_LIST }
+
+    private static final class Entry {
+        final String etag;
+        final byte[] body;
+
+        Entry(String etag, byte[] body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResponseCache(@Value("${songs.response-cache.max-bytes:16777216}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**@param etag the current ETag of the resource
+     * @return the cached body or <code>null</code> if there is none for this ETag
+     */
+    byte[] get(Kind kind, int id, String mediaType, String etag) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(kind, id, mediaType));
+        }
+        if (entry == null || !entry.etag.equals(etag)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.body;
+    }
+
+    void put(Kind kind, int id, String mediaType, String etag, byte[] body) {
+        if (body.length > maxBytes) return;
+        synchronized (entries) {
+            Entry previous = entries.put(key(kind, id, mediaType), new Entry(etag, body));
+            if (previous != null) bytes -= previous.body.length;
+            bytes += body.length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().body.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**removes the bodies of the resource in all media types
+     */
+    void invalidate(Kind kind, int id) {
+        String prefix = kind + ":" + id + ":";
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue().body.length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static String key(Kind kind, int id, String mediaType) {
+        return kind + ":" + id + ":" + mediaType;
+    }
+}
@@ -1,82 +1,166 @@
 package s0566430.songsMS.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonToken;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import s0566430.songsMS.model.ImportResult;
 import s0566430.songsMS.model.Song;
 import s0566430.songsMS.model.SongsXmlRoot;
 import s0566430.songsMS.repository.SongDao;
 
 import javax.persistence.PersistenceException;
 import javax.xml.bind.JAXBException;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
-import static s0566430.songsMS.controller.AuthService.convertSongToXml;
 import static s0566430.songsMS.controller.AuthService.getStackTrace;
 
 @RestController
 @RequestMapping
 public class SongController {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private SongDao dao;
-    private ObjectMapper mapper = new ObjectMapper();
-    private AuthService authService;
+    private XmlConverter xmlConverter;
+    private JsonConverter jsonConverter;
+    private ResponseCache responseCache;
+    private int importBatchSize;
 
-    public SongController(SongDao dao, AuthService authService) {
+    public SongController(SongDao dao, XmlConverter xmlConverter, JsonConverter jsonConverter, ResponseCache responseCache,
+                          @Value("${songs.import.batch-size:500}") int importBatchSize) {
         this.dao = dao;
-        this.authService = authService;
+        this.xmlConverter = xmlConverter;
+        this.jsonConverter = jsonConverter;
+        this.responseCache = responseCache;
+        this.importBatchSize = importBatchSize;
     }
 
+    /**Without paging parameters all songs are returned. With <code>limit</code> the songs are paged in the order of their ids,
+     * either by <code>offset</code> or, for constant cost per page, by the id of the last song of the previous page (<code>after</code>).
+     * If there is a next page, its URI is given in the <code>Link</code> header and its cursor in the <code>X-Next-Cursor</code> header.
+     */
     @GetMapping
-    public ResponseEntity<String> getAllSongs(@RequestHeader(HttpHeaders.ACCEPT) String accept, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) throws IOException, JAXBException {
-        // checks for auth token in usercontroller hashmap
-        if (!authService.doesTokenExist(auth))
+    public ResponseEntity<String> getAllSongs(
+            @RequestHeader(HttpHeaders.ACCEPT) String accept,
+            AuthenticatedUser user,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer after
+    ) throws IOException, JAXBException {
+        if (user == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
+        List<Song> songs;
+        HttpHeaders headers = new HttpHeaders();
+        if (limit == null && offset == null && after == null) {
+            songs = dao.findAllSongs();
+        } else {
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+                return ResponseEntity.badRequest().body("parameter 'limit' must be between 1 and " + MAX_PAGE_SIZE);
+            if (offset != null && after != null)
+                return ResponseEntity.badRequest().body("parameters 'offset' and 'after' can not be combined");
+            if (offset != null && offset < 0)
+                return ResponseEntity.badRequest().body("parameter 'offset' can not be negative");
+
+            // one additional song tells whether there is a next page
+            if (offset != null)
+                songs = dao.findSongs(offset, pageSize + 1);
+            else
+                songs = dao.findSongsAfter(after == null ? 0 : after, pageSize + 1);
+            if (songs.size() > pageSize) {
+                songs = songs.subList(0, pageSize);
+                int cursor = songs.get(pageSize - 1).getId();
+                String next = offset != null ? "offset=" + (offset + pageSize) : "after=" + cursor;
+                headers.add(HttpHeaders.LINK, "</rest/songs?" + next + "&limit=" + pageSize + ">; rel=\"next\"");
+                headers.add(NEXT_CURSOR_HEADER, String.valueOf(cursor));
+            }
+        }
+
         switch (accept) {
             case MediaType.APPLICATION_JSON_VALUE:
-                return new ResponseEntity<>(mapper.writeValueAsString(dao.findAllSongs()), HttpStatus.OK);
+                return ResponseEntity.ok().headers(headers).body(jsonConverter.writeSongs(songs));
             case MediaType.APPLICATION_XML_VALUE:
-                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(convertSongToXml(new SongsXmlRoot(dao.findAllSongs())));
+                return ResponseEntity.ok().headers(headers).contentType(MediaType.APPLICATION_XML).body(xmlConverter.toXml(new SongsXmlRoot(songs)));
             default:
                 return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
         }
     }
 
-    @GetMapping(value = "/{id}")
-    public ResponseEntity<String> getSong(@RequestHeader(HttpHeaders.ACCEPT) String accept, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth, @PathVariable Integer id) throws IOException, JAXBException {
-        if (!authService.doesTokenExist(auth))
+    /**Streams all songs in the order of their ids. Unlike {@link #getAllSongs}, the memory needed does not grow with the number of songs.
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllSongs(@RequestHeader(HttpHeaders.ACCEPT) String accept, AuthenticatedUser user) {
+        if (user == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
-        Song song = dao.findSong(id);
-        if (song == null) return ResponseEntity.notFound().build();
-
         switch (accept) {
             case MediaType.APPLICATION_JSON_VALUE:
-                return new ResponseEntity<>(mapper.writeValueAsString(song), HttpStatus.OK);
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body(StreamingResponses.json(jsonConverter.getSongWriter(), dao::streamAllSongs));
             case MediaType.APPLICATION_XML_VALUE:
-                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(convertSongToXml(new SongsXmlRoot(song)));
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML)
+                        .body(StreamingResponses.xml(xmlConverter.getContext(), "songs", "song", Song.class, dao::streamAllSongs));
             default:
                 return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
         }
     }
 
+    /**Supports conditional requests with <code>If-None-Match</code> and <code>If-Modified-Since</code>, see {@link ETags}.
+     * The rendered song is kept in the {@link ResponseCache} until the song changes.
+     */
+    @GetMapping(value = "/{id}")
+    public ResponseEntity<byte[]> getSong(@RequestHeader(HttpHeaders.ACCEPT) String accept, AuthenticatedUser user, @PathVariable Integer id, WebRequest request) throws IOException, JAXBException {
+        if (user == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        Song song = dao.findSong(id);
+        if (song == null) return ResponseEntity.notFound().build();
+
+        // also sets the ETag and Last-Modified headers of the response
+        String etag = ETags.of(song, accept);
+        if (etag == null) return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        if (request.checkNotModified(etag, ETags.lastModified(song)))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+
+        byte[] body = responseCache.get(ResponseCache.Kind.SONG, id, accept, etag);
+        if (body == null) {
+            String rendered = accept.equals(MediaType.APPLICATION_JSON_VALUE)
+                    ? jsonConverter.writeSong(song)
+                    : xmlConverter.toXml(new SongsXmlRoot(song));
+            body = rendered.getBytes(StandardCharsets.UTF_8);
+            responseCache.put(ResponseCache.Kind.SONG, id, accept, etag, body);
+        }
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(accept)).body(body);
+    }
+
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> postSong(@RequestBody String songJson, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) throws IOException {
-        if (!authService.doesTokenExist(auth))
+    public ResponseEntity<String> postSong(@RequestBody String songJson, AuthenticatedUser user) throws IOException {
+        if (user == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         int songId = -1;
         try {
             if (songJson.toLowerCase().contains("\"id\":"))
                 return ResponseEntity.badRequest().body("song IDs are not to be manually assigned");
-            Song song = mapper.readValue(songJson, Song.class);
+            Song song = jsonConverter.readSong(songJson);
             if (song.getTitle() == null)
                 throw new IllegalArgumentException("property 'title' must be provided");
             songId = dao.saveSong(song);
@@ -88,13 +172,56 @@ public class SongController {
         return ResponseEntity.created(URI.create("/rest/songs/" + songId)).contentType(MediaType.TEXT_PLAIN).build();
     }
 
+    /**Imports a JSON array of songs. The body is parsed song by song and the valid songs are saved in transactions
+     * of <code>songs.import.batch-size</code> songs, see {@link SongImport}.
+     * @return the outcome of every song, see {@link ImportResult}
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> importSongs(InputStream body, AuthenticatedUser user) throws IOException {
+        if (user == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        SongImport songImport = new SongImport(dao, jsonConverter, importBatchSize);
+        try (JsonParser parser = jsonConverter.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                return ResponseEntity.badRequest().body("a JSON array of songs is expected");
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken())
+                songImport.add(jsonConverter.readTree(parser));
+        } catch (JsonProcessingException e) {
+            // the rest of the array can not be read, the songs before are imported nonetheless
+            songImport.reject(e.getOriginalMessage());
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(jsonConverter.writeImportResults(songImport.finish()));
+    }
+
+    /**Imports newline-delimited JSON, one song per line, like {@link #importSongs}.
+     * Blank lines are skipped, a line that can not be parsed is reported and the import continues with the next line.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<String> importSongsNdjson(InputStream body, AuthenticatedUser user) throws IOException {
+        if (user == null)
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+
+        SongImport songImport = new SongImport(dao, jsonConverter, importBatchSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isBlank()) continue;
+            try {
+                songImport.add(jsonConverter.readTree(line));
+            } catch (JsonProcessingException e) {
+                songImport.reject(e.getOriginalMessage());
+            }
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(jsonConverter.writeImportResults(songImport.finish()));
+    }
+
     @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE, value = "/{id}")
-    public ResponseEntity<String> updateSong(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth, @PathVariable Integer id, @RequestBody String songJson) throws IOException {
-        if (!authService.doesTokenExist(auth))
+    public ResponseEntity<String> updateSong(AuthenticatedUser user, @PathVariable Integer id, @RequestBody String songJson) throws IOException {
+        if (user == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         try {
-            Song song = mapper.readValue(songJson, Song.class);
+            Song song = jsonConverter.readSong(songJson);
             if (song.getTitle() == null)
                 throw new IllegalArgumentException("property 'title' must be provided");
             if (song.getId() == 0)
@@ -102,6 +229,7 @@ public class SongController {
             else if (song.getId() != id)
                 throw new IllegalArgumentException("property 'id' and path variable must be identical");
             dao.updateSong(song);
+            responseCache.invalidate(ResponseCache.Kind.SONG, id);
         } catch (PersistenceException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(getStackTrace(e));
         } catch (JsonProcessingException | IllegalArgumentException e) {
@@ -113,12 +241,13 @@ public class SongController {
     }
 
     @DeleteMapping(value = "/{id}")
-    public ResponseEntity<String> deleteSong(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth, @PathVariable Integer id) throws IOException {
-        if (!authService.doesTokenExist(auth))
+    public ResponseEntity<String> deleteSong(AuthenticatedUser user, @PathVariable Integer id) throws IOException {
+        if (user == null)
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         try {
             dao.deleteSong(id);
+            responseCache.invalidate(ResponseCache.Kind.SONG, id);
         } catch (IndexOutOfBoundsException e) {
             return ResponseEntity.notFound().build();
         } catch (PersistenceException e) {
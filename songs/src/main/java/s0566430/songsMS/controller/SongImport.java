@@ -0,0 +1,91 @@
+package s0566430.songsMS.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import s0566430.songsMS.model.ImportResult;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.repository.SongDao;
+
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validates the songs of a batch import one at a time and saves the valid ones in transactions of <code>batchSize</code> songs,
+ * so that neither the parsed songs nor the Hibernate session grow with the size of the import.
+ * If a transaction fails, only the songs of that batch are reported as failed.
+ */
+class SongImport {
+
+    private final SongDao dao;
+    private final JsonConverter jsonConverter;
+    private final int batchSize;
+
+    private final List<ImportResult> results = new ArrayList<>();
+    private final List<Song> pending = new ArrayList<>();
+    private final List<Integer> pendingIndexes = new ArrayList<>();
+
+    SongImport(SongDao dao, JsonConverter jsonConverter, int batchSize) {
+        this.dao = dao;
+        this.jsonConverter = jsonConverter;
+        this.batchSize = batchSize;
+    }
+
+    /**@param node the next song of the body
+     */
+    void add(JsonNode node) {
+        int index = results.size();
+        if (!node.isObject()) {
+            reject("a song must be a JSON object");
+            return;
+        }
+        if (node.has("id")) {
+            reject("song IDs are not to be manually assigned");
+            return;
+        }
+        Song song;
+        try {
+            song = jsonConverter.readSong(node);
+        } catch (JsonProcessingException e) {
+            reject(e.getOriginalMessage());
+            return;
+        }
+        if (song.getTitle() == null) {
+            reject("property 'title' must be provided");
+            return;
+        }
+        // replaced by the outcome once the batch has been saved
+        results.add(null);
+        pending.add(song);
+        pendingIndexes.add(index);
+        if (pending.size() >= batchSize) flush();
+    }
+
+    /**Records the next song of the body as invalid, e.g. because it could not be parsed.
+     */
+    void reject(String error) {
+        results.add(ImportResult.rejected(results.size(), error));
+    }
+
+    /**Saves the remaining songs.
+     * @return the outcome of every song in the order of the body
+     */
+    List<ImportResult> finish() {
+        flush();
+        return results;
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) return;
+        try {
+            List<Integer> ids = dao.saveSongs(pending);
+            for (int i = 0; i < ids.size(); i++)
+                results.set(pendingIndexes.get(i), ImportResult.created(pendingIndexes.get(i), ids.get(i)));
+        } catch (PersistenceException e) {
+            for (int index : pendingIndexes)
+                results.set(index, ImportResult.failed(index, e.getMessage()));
+        }
+        pending.clear();
+        pendingIndexes.clear();
+    }
+}
@@ -1,13 +1,16 @@
 package s0566430.songsMS.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummariesXmlRoot;
+import s0566430.songsMS.model.SongListSummary;
 import s0566430.songsMS.model.SongListsXmlRoot;
 import s0566430.songsMS.repository.SongDao;
 import s0566430.songsMS.repository.SongListDao;
@@ -16,9 +19,10 @@ import javax.persistence.PersistenceException;
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.Consumer;
 
-import static s0566430.songsMS.controller.AuthService.convertSongListToXml;
 import static s0566430.songsMS.controller.AuthService.getStackTrace;
 
 @RestController
@@ -28,80 +32,134 @@ public class SongListController {
     private SongListDao songListDao;
     private SongDao songDao;
     private AuthService authService;
-    private ObjectMapper mapper = new ObjectMapper();
+    private XmlConverter xmlConverter;
+    private JsonConverter jsonConverter;
+    private ResponseCache responseCache;
 
-    public SongListController(SongListDao songListDao, SongDao songDao, AuthService authService) {
+    public SongListController(SongListDao songListDao, SongDao songDao, AuthService authService, XmlConverter xmlConverter, JsonConverter jsonConverter, ResponseCache responseCache) {
         this.songListDao = songListDao;
         this.songDao = songDao;
         this.authService = authService;
+        this.xmlConverter = xmlConverter;
+        this.jsonConverter = jsonConverter;
+        this.responseCache = responseCache;
     }
 
+    /**Lists the lists of a user as summaries with the number of songs, see {@link SongListSummary}.
+     * With <code>expand=songs</code> the lists are returned with their songs.
+     */
     @GetMapping
     public ResponseEntity<String> getAllListsByUserId(
             @RequestHeader(HttpHeaders.ACCEPT) String accept,
-            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
-            @RequestParam String userId
+            AuthenticatedUser user,
+            @RequestParam String userId,
+            @RequestParam(required = false) String expand
     ) throws IOException, JAXBException {
-        if (!authService.doesTokenExist(auth)) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-        if (!authService.doesUserIdExist(userId)) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        if (!user.isOwnerOf(userId) && !authService.doesUserIdExist(userId)) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        if (expand != null && !expand.equals("songs")) return ResponseEntity.badRequest().body("parameter 'expand' only supports 'songs'");
         // TODO: add error handling
 
-        List<SongList> songLists;
-        if (authService.doesTokenMatchUserId(auth, userId)) {
-            songLists = songListDao.findAllListsByUserId(userId);
-        } else {
-            songLists = songListDao.findAllPublicListsByUserId(userId);
+        boolean isOwner = user.isOwnerOf(userId);
+        if (expand != null) {
+            List<SongList> songLists = songListDao.findListsWithSongsByUserId(userId, isOwner);
+            switch (accept) {
+                case MediaType.APPLICATION_JSON_VALUE:
+                    return new ResponseEntity<>(jsonConverter.writeSongLists(songLists), HttpStatus.OK);
+                case MediaType.APPLICATION_XML_VALUE:
+                    return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(xmlConverter.toXml(new SongListsXmlRoot(songLists)));
+                default:
+                    return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+            }
+        }
+
+        List<SongListSummary> summaries = songListDao.findListSummariesByUserId(userId, isOwner);
+        switch (accept) {
+            case MediaType.APPLICATION_JSON_VALUE:
+                return new ResponseEntity<>(jsonConverter.writeSongListSummaries(summaries), HttpStatus.OK);
+            case MediaType.APPLICATION_XML_VALUE:
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(xmlConverter.toXml(new SongListSummariesXmlRoot(summaries)));
+            default:
+                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
         }
+    }
+
+    /**Streams the lists of a user, see {@link SongController#streamAllSongs}
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllListsByUserId(
+            @RequestHeader(HttpHeaders.ACCEPT) String accept,
+            AuthenticatedUser user,
+            @RequestParam String userId
+    ) {
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        boolean isOwner = user.isOwnerOf(userId);
+        if (!isOwner && !authService.doesUserIdExist(userId)) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 
+        Consumer<Consumer<SongList>> source = consumer -> songListDao.streamListsByUserId(userId, isOwner, consumer);
         switch (accept) {
             case MediaType.APPLICATION_JSON_VALUE:
-                return new ResponseEntity<>(mapper.writeValueAsString(songLists), HttpStatus.OK);
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body(StreamingResponses.json(jsonConverter.getSongListWriter(), source));
             case MediaType.APPLICATION_XML_VALUE:
-                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(convertSongListToXml(new SongListsXmlRoot(songLists)));
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML)
+                        .body(StreamingResponses.xml(xmlConverter.getContext(), "songlists", "songlist", SongList.class, source));
             default:
                 return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
         }
     }
 
+    /**Supports conditional requests with <code>If-None-Match</code> and <code>If-Modified-Since</code>, see {@link ETags}.
+     * The rendered list is kept in the {@link ResponseCache} until the list or one of its songs changes.
+     */
     @GetMapping(value = "/{id}")
-    public ResponseEntity<String> getListById(
+    public ResponseEntity<byte[]> getListById(
             @RequestHeader(HttpHeaders.ACCEPT) String accept,
-            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth,
-            @PathVariable Integer id
+            AuthenticatedUser user,
+            @PathVariable Integer id,
+            WebRequest request
     ) throws IOException, JAXBException {
-        if (!authService.doesTokenExist(auth)) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         SongList songList = songListDao.findListById(id);
         if (songList == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 
-        if (!authService.doesTokenMatchUserId(auth, songList.getOwnerId()) && songList.getIsPrivate()) {
+        if (!user.isOwnerOf(songList.getOwnerId()) && songList.getIsPrivate()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        switch (accept) {
-            case MediaType.APPLICATION_JSON_VALUE:
-                return new ResponseEntity<>(mapper.writeValueAsString(songList), HttpStatus.OK);
-            case MediaType.APPLICATION_XML_VALUE:
-                return ResponseEntity.ok().contentType(MediaType.APPLICATION_XML).body(convertSongListToXml(new SongListsXmlRoot(songList)));
-            default:
-                return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        // also sets the ETag and Last-Modified headers of the response
+        String etag = ETags.of(songList, accept);
+        if (etag == null) return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        if (request.checkNotModified(etag, ETags.lastModified(songList)))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+
+        // the ETag covers the versions of the songs, so changed songs are never served from the cache
+        byte[] body = responseCache.get(ResponseCache.Kind.SONG_LIST, id, accept, etag);
+        if (body == null) {
+            String rendered = accept.equals(MediaType.APPLICATION_JSON_VALUE)
+                    ? jsonConverter.writeSongList(songList)
+                    : xmlConverter.toXml(new SongListsXmlRoot(songList));
+            body = rendered.getBytes(StandardCharsets.UTF_8);
+            responseCache.put(ResponseCache.Kind.SONG_LIST, id, accept, etag, body);
         }
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(accept)).body(body);
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> postList(@RequestBody String listJson, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth) throws IOException {
-        if (!authService.doesTokenExist(auth)) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    public ResponseEntity<String> postList(@RequestBody String listJson, AuthenticatedUser user) throws IOException {
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         int listId = -1;
         try {
             if (listJson.toLowerCase().contains("\"listId\":"))
                 return ResponseEntity.badRequest().body("list IDs are not to be manually assigned");
-            SongList songList = mapper.readValue(listJson, SongList.class);
+            SongList songList = jsonConverter.readSongList(listJson);
             if (songList.getListName() == null)
                 throw new IllegalArgumentException("property 'name' must be provided");
-            if (!doAllSongsExist(songList))
+            if (!songDao.doAllSongsExist(songList.getSongs()))
                 return ResponseEntity.badRequest().body("invalid Song information, please match with database entries");
-            songList.setOwnerId(authService.getUserIdForToken(auth));
+            songList.setOwnerId(user.getUserId());
             listId = songListDao.saveList(songList);
         } catch (PersistenceException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(getStackTrace(e));
@@ -112,65 +170,51 @@ public class SongListController {
     }
 
     @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE, value = "/{id}")
-    public ResponseEntity<String> updateList(@RequestBody String listJson, @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth, @PathVariable int id) throws IOException {
-        if (!authService.doesTokenExist(auth)) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    public ResponseEntity<String> updateList(@RequestBody String listJson, AuthenticatedUser user, @PathVariable int id) throws IOException {
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         try {
             if (id == 0)
                 throw new IllegalArgumentException("path variable 'listId' must be provided and can not be 0");
 
-            SongList songListNew = mapper.readValue(listJson, SongList.class);
-            if (!doAllSongsExist(songListNew))
+            SongList songListNew = jsonConverter.readSongList(listJson);
+            if (!songDao.doAllSongsExist(songListNew.getSongs()))
                 return ResponseEntity.badRequest().body("invalid SongList information, please match with database entries");
 
-            SongList songListOriginal = songListDao.findListById(id);
-            if (songListOriginal == null)
-                return ResponseEntity.notFound().build();
-            if (!authService.doesTokenMatchUserId(auth, songListOriginal.getOwnerId()))
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-
-            // only update contents of json, keep other properties the same
+            // only update contents of json, the other properties are kept by the update
             songListNew.setListId(id);
-            songListNew.setOwnerId(songListOriginal.getOwnerId());
-            if (!listJson.contains("\"isPrivate\":"))
-                songListNew.setIsPrivate(songListOriginal.getIsPrivate());
-            if (songListNew.getListName() == null)
-                songListNew.setListName(songListOriginal.getListName());
-            if (songListNew.getSongs() == null)
-                songListNew.setSongs(songListOriginal.getSongs());
-            songListDao.updateList(songListNew);
+            songListNew.setOwnerId(user.getUserId());
+            if (!songListDao.updateList(songListNew, listJson.contains("\"isPrivate\":")))
+                return notUpdated(id);
+            responseCache.invalidate(ResponseCache.Kind.SONG_LIST, id);
         } catch (PersistenceException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(getStackTrace(e));
         } catch (JsonProcessingException | IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(getStackTrace(e));
-        } catch (IndexOutOfBoundsException e) {
-            return ResponseEntity.notFound().build();
         }
         return ResponseEntity.noContent().build();
     }
 
-    private boolean doAllSongsExist(SongList songList) {
-        return songDao.findAllSongs().containsAll(songList.getSongs());
-    }
-
     @DeleteMapping(value = "/{id}")
-    public ResponseEntity<String> deleteListById(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String auth, @PathVariable Integer id) throws IOException {
-        if (!authService.doesTokenExist(auth)) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
-
-        SongList songList = songListDao.findListById(id);
-        if (songList == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-
-        if (!authService.doesTokenMatchUserId(auth, songList.getOwnerId())) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
+    public ResponseEntity<String> deleteListById(AuthenticatedUser user, @PathVariable Integer id) throws IOException {
+        if (user == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         try {
-            songListDao.deleteList(id);
-        } catch (IndexOutOfBoundsException e) {
-            return ResponseEntity.notFound().build();
+            if (!songListDao.deleteList(id, user.getUserId()))
+                return notUpdated(id);
+            responseCache.invalidate(ResponseCache.Kind.SONG_LIST, id);
         } catch (PersistenceException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(getStackTrace(e));
         }
         return ResponseEntity.noContent().build();
     }
+
+    /**@return the response to a write that has not affected the list, it is only read now to tell a missing list
+     * from a list of another owner
+     */
+    private ResponseEntity<String> notUpdated(int id) {
+        if (songListDao.findListById(id) == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
 }
@@ -0,0 +1,89 @@
+package s0566430.songsMS.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes listings to the response one element at a time, using Jackson's streaming generator for JSON and StAX for XML.
+ * The elements are pulled from a source such as {@link s0566430.songsMS.repository.SongDao#streamAllSongs(Consumer)},
+ * so neither the entities nor the serialized listing have to be held in memory as a whole.
+ */
+final class StreamingResponses {
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private StreamingResponses() {
+    }
+
+    /**@param elementWriter the writer for a single element
+     * @param source passes every element of the listing to the given consumer
+     * @return a JSON array of the elements
+     */
+    static <T> StreamingResponseBody json(ObjectWriter elementWriter, Consumer<Consumer<T>> source) {
+        ObjectWriter writer = elementWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            JsonGenerator generator = writer.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            try {
+                source.accept(element -> {
+                    try {
+                        writer.writeValue(generator, element);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+            generator.flush();
+        };
+    }
+
+    /**@param context a JAXB context that knows <code>type</code>
+     * @param rootName the name of the root element, e.g. <code>songs</code>
+     * @param elementName the name of the element for each entry, e.g. <code>song</code>
+     * @param source passes every element of the listing to the given consumer
+     * @return an XML document with the same structure as the corresponding <code>XmlRoot</code> class
+     */
+    static <T> StreamingResponseBody xml(JAXBContext context, String rootName, String elementName, Class<T> type, Consumer<Consumer<T>> source) {
+        QName elementQName = new QName(elementName);
+        return out -> {
+            try {
+                Marshaller marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+                XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.writeStartElement(rootName);
+                source.accept(element -> {
+                    try {
+                        marshaller.marshal(new JAXBElement<>(elementQName, type, element), writer);
+                    } catch (JAXBException e) {
+                        throw new UncheckedIOException(new IOException(e));
+                    }
+                });
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.flush();
+            } catch (JAXBException | XMLStreamException e) {
+                throw new IOException(e);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+}
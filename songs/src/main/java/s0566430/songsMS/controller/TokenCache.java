@@ -0,0 +1,103 @@
+package s0566430.songsMS.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-process cache mapping auth tokens to user ids.
+ * Unknown tokens are cached as well (with a userId of <code>null</code>) so repeated requests
+ * with an invalid token don't reach the auth service either.
+ * When full, the least recently used token is evicted.
+ */
+class TokenCache {
+
+    static final class Entry {
+        final String userId;
+        final long expiresAt;
+
+        private Entry(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    TokenCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this(maxSize, ttlMillis, negativeTtlMillis, System::currentTimeMillis);
+    }
+
+    TokenCache(int maxSize, long ttlMillis, long negativeTtlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**@param token the auth token
+     * @return the cached entry for the token or <code>null</code> if it is not cached or has expired
+     */
+    Entry get(String token) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(token);
+            if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+                entries.remove(token);
+                entry = null;
+            }
+        }
+        if (entry == null) misses.increment();
+        else hits.increment();
+        return entry;
+    }
+
+    /**@param userId the user id the token belongs to or <code>null</code> if the token is unknown
+     */
+    void put(String token, String userId) {
+        long ttl = userId != null ? ttlMillis : negativeTtlMillis;
+        if (ttl <= 0) return;
+        Entry entry = new Entry(userId, clock.getAsLong() + ttl);
+        synchronized (entries) {
+            entries.put(token, entry);
+        }
+    }
+
+    void invalidate(String token) {
+        synchronized (entries) {
+            entries.remove(token);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+}
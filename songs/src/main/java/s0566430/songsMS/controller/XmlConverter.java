@@ -0,0 +1,61 @@
+package s0566430.songsMS.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import s0566430.songsMS.model.SongListSummariesXmlRoot;
+import s0566430.songsMS.model.SongListsXmlRoot;
+import s0566430.songsMS.model.SongsXmlRoot;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.StringWriter;
+
+/**
+ * Converts the XML root objects of the responses to XML.
+ * The JAXB context is thread-safe and built once, marshallers are not thread-safe and are kept per thread.
+ * Output is indented unless <code>songs.xml.formatted</code> is <code>false</code>.
+ */
+@Component
+public class XmlConverter {
+
+    private final JAXBContext context;
+    private final ThreadLocal<Marshaller> marshaller;
+
+    public XmlConverter(@Value("${songs.xml.formatted:true}") boolean formatted) throws JAXBException {
+        this.context = JAXBContext.newInstance(SongsXmlRoot.class, SongListsXmlRoot.class, SongListSummariesXmlRoot.class);
+        this.marshaller = ThreadLocal.withInitial(() -> {
+            try {
+                Marshaller marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+                return marshaller;
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public String toXml(SongsXmlRoot songs) throws JAXBException {
+        return marshal(songs);
+    }
+
+    public String toXml(SongListsXmlRoot songLists) throws JAXBException {
+        return marshal(songLists);
+    }
+
+    public String toXml(SongListSummariesXmlRoot summaries) throws JAXBException {
+        return marshal(summaries);
+    }
+
+    /**@return the context for {@link SongsXmlRoot} and {@link SongListsXmlRoot}, e.g. to create marshallers with other properties
+     */
+    public JAXBContext getContext() {
+        return context;
+    }
+
+    private String marshal(Object jaxbElement) throws JAXBException {
+        StringWriter sw = new StringWriter();
+        marshaller.get().marshal(jaxbElement, sw);
+        return sw.toString();
+    }
+}
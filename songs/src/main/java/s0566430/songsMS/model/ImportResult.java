@@ -0,0 +1,53 @@
+package s0566430.songsMS.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a single song of a batch import: 201 with the id of the new song,
+ * 400 if the song is invalid or 500 if it could not be saved.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportResult {
+
+    private final int index;
+    private final int status;
+    private final Integer id;
+    private final String error;
+
+    private ImportResult(int index, int status, Integer id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static ImportResult created(int index, int id) {
+        return new ImportResult(index, 201, id, null);
+    }
+
+    public static ImportResult rejected(int index, String error) {
+        return new ImportResult(index, 400, null, error);
+    }
+
+    public static ImportResult failed(int index, String error) {
+        return new ImportResult(index, 500, null, error);
+    }
+
+    /**@return the position of the song in the imported body, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
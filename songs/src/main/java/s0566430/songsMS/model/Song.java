@@ -1,19 +1,28 @@
 package s0566430.songsMS.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sun.istack.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import javax.xml.bind.annotation.XmlTransient;
 import java.util.List;
 import java.util.Objects;
 
 @Entity
 @Table(name = "songs")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Song {
 
     @Id
     @NotNull
-    @GenericGenerator(name="songs_gen" , strategy="increment")
+    @GenericGenerator(name="songs_gen", strategy="s0566430.songsMS.model.PooledSequenceGenerator",
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "songs_seq"))
     @GeneratedValue(generator="songs_gen")
     @Column(name = "songid")
     private int id;
@@ -26,6 +35,13 @@ public class Song {
     private String artist, label;
     private int released;
 
+    /** incremented on every update, used for ETags */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+    /** time of the last change in milliseconds */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long modifiedAt;
+
     public Song() {
     }
 
@@ -80,6 +96,26 @@ public class Song {
         this.released = released;
     }
 
+    @JsonIgnore
+    @XmlTransient
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    @XmlTransient
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    public void setModifiedAt(long modifiedAt) {
+        this.modifiedAt = modifiedAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
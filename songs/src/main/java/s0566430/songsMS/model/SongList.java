@@ -2,7 +2,12 @@ package s0566430.songsMS.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.sun.istack.NotNull;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.xml.bind.annotation.XmlElement;
@@ -11,23 +16,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "songlists")
-@JsonIgnoreProperties({"listId", "ownerId", "songsXmlRoot"})
+// the lists of a user are looked up by owner and, for other users, visibility
+@Table(name = "songlists", indexes = @Index(name = "songlists_owner_idx", columnList = "ownerId, isPrivate"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@JsonIgnoreProperties({"listId", "ownerId", "songsXmlRoot", "version", "modifiedAt"})
 public class SongList {
 
     @Id
     @NotNull
-    @GenericGenerator(name="songlists_gen" , strategy="increment")
+    @GenericGenerator(name="songlists_gen", strategy="s0566430.songsMS.model.PooledSequenceGenerator",
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "songlists_seq"))
     @GeneratedValue(generator="songlists_gen")
     private int listId;
     @NotNull
     private String ownerId;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    // loaded by the repository where needed, for up to 50 lists per query
+    @ManyToMany
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name="songlists_songs",
             joinColumns = @JoinColumn(name = "listId"),
-            inverseJoinColumns = @JoinColumn(name = "songId"))
+            inverseJoinColumns = @JoinColumn(name = "songId"),
+            // the songs are fetched and counted by list, PostgreSQL does not index foreign keys by itself
+            indexes = @Index(name = "songlists_songs_list_idx", columnList = "listId"))
     private List<Song> songs = new ArrayList<>();
 
     @NotNull
@@ -35,6 +49,13 @@ public class SongList {
     @NotNull
     private boolean isPrivate;
 
+    /** incremented on every update, used for ETags */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+    /** time of the last change in milliseconds */
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long modifiedAt;
+
     public SongList() {}
 
     public SongList(String ownerId, String listName, boolean isPrivate) {
@@ -90,4 +111,22 @@ public class SongList {
     public void setIsPrivate(boolean isPrivate) {
         this.isPrivate = isPrivate;
     }
-}
\ No newline at end of file
+
+    @XmlTransient
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @XmlTransient
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    public void setModifiedAt(long modifiedAt) {
+        this.modifiedAt = modifiedAt;
+    }
+}
@@ -0,0 +1,24 @@
+package s0566430.songsMS.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.List;
+
+@XmlRootElement(name = "songlists")
+public class SongListSummariesXmlRoot {
+    private List<SongListSummary> summaries;
+
+    public SongListSummariesXmlRoot() {
+    }
+
+    public SongListSummariesXmlRoot(List<SongListSummary> summaries) { this.summaries = summaries; }
+
+    public void setSummaries(List<SongListSummary> summaries) {
+        this.summaries = summaries;
+    }
+
+    @XmlElement(name = "songlist")
+    public List<SongListSummary> getSummaries() {
+        return summaries;
+    }
+}
@@ -0,0 +1,61 @@
+package s0566430.songsMS.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Projection of a {@link SongList} for listings: everything but the songs, which are only counted.
+ */
+@JsonPropertyOrder({"listId", "listName", "isPrivate", "songCount"})
+@XmlType(propOrder = {"listId", "listName", "isPrivate", "songCount"})
+public class SongListSummary {
+
+    private int listId;
+    private String listName;
+    private boolean isPrivate;
+    private int songCount;
+
+    public SongListSummary() {
+    }
+
+    /** used by the constructor expression of the summary query */
+    public SongListSummary(int listId, String listName, boolean isPrivate, int songCount) {
+        this.listId = listId;
+        this.listName = listName;
+        this.isPrivate = isPrivate;
+        this.songCount = songCount;
+    }
+
+    public int getListId() {
+        return listId;
+    }
+
+    public void setListId(int listId) {
+        this.listId = listId;
+    }
+
+    public String getListName() {
+        return listName;
+    }
+
+    public void setListName(String listName) {
+        this.listName = listName;
+    }
+
+    public boolean getIsPrivate() {
+        return isPrivate;
+    }
+
+    public void setIsPrivate(boolean isPrivate) {
+        this.isPrivate = isPrivate;
+    }
+
+    public int getSongCount() {
+        return songCount;
+    }
+
+    public void setSongCount(int songCount) {
+        this.songCount = songCount;
+    }
+}
@@ -0,0 +1,79 @@
+package s0566430.songsMS.repository;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Songs and song lists used to get their ids from Hibernate's increment generator, i.e. the highest id plus one.
+ * The sequences that replace it are created by the schema update starting at 1, so on startup each sequence
+ * is moved past the highest id of its table. Once a sequence is ahead of its table, this does nothing but
+ * use up one block of ids, so it runs on every start of every instance.
+ * The check and the restart are not atomic: of two instances starting at the same time, the second could restart
+ * a sequence the first has already handed out ids from. On PostgreSQL the migration therefore holds a transaction-level
+ * advisory lock, other databases are only used by a single instance in the tests.
+ */
+@Component
+public class IdSequenceMigration {
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    /** key of the advisory lock, any number that no other part of the application locks */
+    static final long LOCK_KEY = 0x69645f736571L;
+
+    @PostConstruct
+    public void migrate() {
+        Dialect dialect = ((SessionFactoryImplementor) sessionFactory).getJdbcServices().getDialect();
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.doWork(connection -> {
+                String lock = lockStatement(dialect);
+                if (lock != null) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(lock);
+                    }
+                }
+                advance(connection, dialect, "songs_seq", "songs", "songid");
+                advance(connection, dialect, "songlists_seq", "songlists", "listId");
+            });
+            transaction.commit();
+        }
+    }
+
+    /**@return the statement that serializes the migration until the end of the transaction
+     * or <code>null</code> if the database has none
+     */
+    static String lockStatement(Dialect dialect) {
+        if (dialect instanceof PostgreSQL81Dialect)
+            return "SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")";
+        return null;
+    }
+
+    private static void advance(Connection connection, Dialect dialect, String sequence, String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            long maxId = queryLong(statement, "SELECT COALESCE(MAX(" + column + "), 0) FROM " + table);
+            long next = queryLong(statement, dialect.getSequenceNextValString(sequence));
+            if (next <= maxId)
+                statement.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + 1));
+        }
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+}
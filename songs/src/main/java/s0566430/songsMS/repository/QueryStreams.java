@@ -0,0 +1,42 @@
+package s0566430.songsMS.repository;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+
+import java.util.function.Consumer;
+
+/**
+ * Reads query results row by row through a forward-only cursor instead of materializing the whole result list.
+ * The session is cleared after every fetch, so only the rows of the current fetch are held in memory,
+ * and the rows are not put into the second-level cache.
+ */
+final class QueryStreams {
+
+    static final int FETCH_SIZE = 500;
+
+    private QueryStreams() {
+    }
+
+    /**@param consumer called for every row, exceptions thrown by it are passed on unchanged
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void forEach(Session session, Query<T> query, Consumer<? super T> consumer) {
+        // rows are loaded while scrolling, after the query has reset its cache mode, so it is set on the session
+        CacheMode cacheMode = session.getCacheMode();
+        session.setCacheMode(CacheMode.IGNORE);
+        query.setFetchSize(FETCH_SIZE).setReadOnly(true);
+        try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            int count = 0;
+            while (results.next()) {
+                consumer.accept((T) results.get(0));
+                if (++count % FETCH_SIZE == 0)
+                    session.clear();
+            }
+        } finally {
+            session.setCacheMode(cacheMode);
+        }
+    }
+}
@@ -3,22 +3,61 @@ package s0566430.songsMS.repository;
 import s0566430.songsMS.model.Song;
 
 import javax.persistence.PersistenceException;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface SongDao {
     int saveSong(Song song) throws PersistenceException;
 
+    /**Saves the songs in a single transaction. The inserts are sent in JDBC batches of <code>hibernate.jdbc.batch_size</code>,
+     * after each batch the session is flushed and cleared so that it does not grow with the number of songs.
+     * @param songs new songs without ids
+     * @return the ids of the songs, in the same order
+     */
+    List<Integer> saveSongs(List<Song> songs) throws PersistenceException;
+
     /**@param id the song id
      * @return the Song object corresponding to the id from the database or <code>null</code> if the id is unassigned
      */
     Song findSong(int id) throws PersistenceException;
     List<Song> findAllSongs() throws PersistenceException;
 
-    /**@param song the Song object with the information that is to be updated in the existing one
+    /**Reads all songs ordered by id without holding them in memory at once.
+     * @param consumer called for every song within the transaction, exceptions thrown by it are passed on unchanged
+     */
+    void streamAllSongs(Consumer<? super Song> consumer) throws PersistenceException;
+
+    /**@param offset the number of songs to skip, in the order of their ids
+     * @param limit the maximum number of songs
+     * @return a page of songs ordered by id
+     */
+    List<Song> findSongs(int offset, int limit) throws PersistenceException;
+
+    /**Keyset paging: unlike an offset, the cursor is looked up in the primary key index, so every page costs the same.
+     * @param afterId the id of the last song of the previous page, 0 for the first page
+     * @param limit the maximum number of songs
+     * @return the songs with an id greater than <code>afterId</code>, ordered by id
+     */
+    List<Song> findSongsAfter(int afterId, int limit) throws PersistenceException;
+
+    /**@param ids the song ids, fetched with a single query
+     * @return the Song objects with the given ids, unassigned ids are left out
+     */
+    List<Song> findSongsByIds(Collection<Integer> ids) throws PersistenceException;
+
+    /**@param songs the songs that are to be checked, e.g. the contents of a SongList, looked up with a single query
+     * @return <code>true</code> if every song matches the database entry with the same id
+     */
+    boolean doAllSongsExist(Collection<Song> songs) throws PersistenceException;
+
+    /**Sends a single UPDATE statement, the song does not exist if no row is affected.
+     * @param song the Song object with the information that is to be updated in the existing one
      */
     void updateSong(Song song) throws PersistenceException, IndexOutOfBoundsException;
 
-    /**@param id the given id of the Song that is to be deleted
+    /**Sends a single DELETE statement, the song does not exist if no row is affected.
+     * @param id the given id of the Song that is to be deleted
      */
     void deleteSong(int id) throws PersistenceException, IndexOutOfBoundsException;
 }
@@ -8,7 +8,15 @@ import org.springframework.transaction.annotation.Transactional;
 import s0566430.songsMS.model.Song;
 
 import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository
 @Transactional
@@ -23,12 +31,38 @@ public class SongDaoImpl implements SongDao {
     @Override
     public int saveSong(Song song) throws PersistenceException {
         try {
+            song.setVersion(0);
+            song.setModifiedAt(System.currentTimeMillis());
             return (int) sessionFactory.getCurrentSession().save(song);
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
+    @Override
+    public List<Integer> saveSongs(List<Song> songs) throws PersistenceException {
+        try {
+            Session session = sessionFactory.getCurrentSession();
+            int batchSize = Math.max(1, sessionFactory.getSessionFactoryOptions().getJdbcBatchSize());
+            long now = System.currentTimeMillis();
+            List<Integer> ids = new ArrayList<>(songs.size());
+            for (Song song : songs) {
+                song.setVersion(0);
+                song.setModifiedAt(now);
+                ids.add((int) session.save(song));
+                if (ids.size() % batchSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.flush();
+            session.clear();
+            return ids;
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
     @Override
     public Song findSong(int id) throws PersistenceException {
         try {
@@ -41,39 +75,101 @@ public class SongDaoImpl implements SongDao {
     @Override
     public List<Song> findAllSongs() throws PersistenceException {
         try {
-            return sessionFactory.getCurrentSession().createQuery("SELECT u FROM Song u").getResultList();
+            return sessionFactory.getCurrentSession().createQuery("SELECT u FROM Song u", Song.class).setCacheable(true).getResultList();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
     @Override
-    public void updateSong(Song song) throws PersistenceException, IndexOutOfBoundsException {
+    public void streamAllSongs(Consumer<? super Song> consumer) throws PersistenceException {
+        Session session = sessionFactory.getCurrentSession();
+        QueryStreams.forEach(session, session.createQuery("SELECT u FROM Song u ORDER BY u.id", Song.class), consumer);
+    }
 
+    @Override
+    public List<Song> findSongs(int offset, int limit) throws PersistenceException {
+        try {
+            return sessionFactory.getCurrentSession().createQuery("SELECT u FROM Song u ORDER BY u.id", Song.class)
+                    .setFirstResult(offset)
+                    .setMaxResults(limit)
+                    .getResultList();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public List<Song> findSongsAfter(int afterId, int limit) throws PersistenceException {
+        try {
+            return sessionFactory.getCurrentSession().createQuery("SELECT u FROM Song u WHERE u.id > :afterId ORDER BY u.id", Song.class)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(limit)
+                    .getResultList();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public List<Song> findSongsByIds(Collection<Integer> ids) throws PersistenceException {
+        if (ids.isEmpty()) return Collections.emptyList();
+        try {
+            return sessionFactory.getCurrentSession().createQuery("SELECT u FROM Song u WHERE u.id IN (:ids)", Song.class)
+                    .setParameterList("ids", ids)
+                    .getResultList();
+        } catch (Exception e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean doAllSongsExist(Collection<Song> songs) throws PersistenceException {
+        if (songs == null || songs.isEmpty()) return true;
+        Set<Integer> ids = new HashSet<>();
+        for (Song song : songs) ids.add(song.getId());
+        Map<Integer, Song> existing = new HashMap<>();
+        for (Song song : findSongsByIds(ids)) existing.put(song.getId(), song);
+        for (Song song : songs)
+            if (!song.equals(existing.get(song.getId()))) return false;
+        return true;
+    }
+
+    @Override
+    public void updateSong(Song song) throws PersistenceException, IndexOutOfBoundsException {
+        int updated;
         try {
-            if (findSong(song.getId()) == null)
-                throw new IndexOutOfBoundsException("song to be updated does not exist (invalid id: "+song.getId()+")");
-            sessionFactory.getCurrentSession().clear();
-            sessionFactory.getCurrentSession().update(song);
-        } catch (IndexOutOfBoundsException e) {
-            throw e;
+            updated = sessionFactory.getCurrentSession().createQuery(
+                    "UPDATE Song u SET u.title = :title, u.artist = :artist, u.label = :label, u.released = :released, " +
+                    "u.version = u.version + 1, u.modifiedAt = :modifiedAt WHERE u.id = :id")
+                    .setParameter("title", song.getTitle())
+                    .setParameter("artist", song.getArtist())
+                    .setParameter("label", song.getLabel())
+                    .setParameter("released", song.getReleased())
+                    .setParameter("modifiedAt", System.currentTimeMillis())
+                    .setParameter("id", song.getId())
+                    .executeUpdate();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
+        if (updated == 0)
+            throw new IndexOutOfBoundsException("song to be updated does not exist (invalid id: "+song.getId()+")");
     }
 
     @Override
     public void deleteSong(int id) throws PersistenceException, IndexOutOfBoundsException {
+        int deleted;
         try {
-            if (findSong(id) == null)
-                throw new IndexOutOfBoundsException("song to be deleted does not exist (invalid id: "+id+")");
-            Session s = sessionFactory.getCurrentSession();
-            s.clear();
-            s.delete(s.get(Song.class, id));
-        } catch (IndexOutOfBoundsException e) {
-            throw e;
+            // HQL would also remove the song from all lists, a song that is part of a list is not to be deleted though
+            deleted = sessionFactory.getCurrentSession().createNativeQuery("DELETE FROM songs WHERE songid = :id")
+                    .addSynchronizedEntityClass(Song.class)
+                    .setParameter("id", id)
+                    .executeUpdate();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
+        if (deleted == 0)
+            throw new IndexOutOfBoundsException("song to be deleted does not exist (invalid id: "+id+")");
     }
 }
@@ -1,24 +1,49 @@
 package s0566430.songsMS.repository;
 
 import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
 
 import javax.persistence.PersistenceException;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface SongListDao {
 
-    List<SongList> findAllPublicListsByUserId(String id) throws PersistenceException;
+    /**@param includePrivate <code>false</code> to only read the public lists
+     * @return the lists of a user without their songs, which are only counted, ordered by id, read with a single query
+     */
+    List<SongListSummary> findListSummariesByUserId(String id, boolean includePrivate) throws PersistenceException;
+
+    /**@param includePrivate <code>false</code> to only read the public lists
+     * @return the lists of a user ordered by id, the songs are fetched with the lists in a single query
+     */
+    List<SongList> findListsWithSongsByUserId(String id, boolean includePrivate) throws PersistenceException;
 
-    List<SongList> findAllListsByUserId(String id) throws PersistenceException;
+    /**Reads the lists of a user ordered by id without holding them in memory at once.
+     * @param includePrivate <code>false</code> to only read the public lists
+     * @param consumer called for every list within the transaction, exceptions thrown by it are passed on unchanged
+     */
+    void streamListsByUserId(String id, boolean includePrivate, Consumer<? super SongList> consumer) throws PersistenceException;
 
-    /**@param id the songlist id
+    /**@param id the songlist id, the songs of the list are loaded as well
      * @return the SongList object corresponding to the id from the database or <code>null</code> if the id is unassigned
      */
     SongList findListById(Integer id) throws PersistenceException;
 
-    Void updateList(SongList songList) throws PersistenceException, IndexOutOfBoundsException;
+    /**Updates name and visibility with a single UPDATE statement that also checks the owner, without reading the list first.
+     * Properties that are <code>null</code> are kept, so are the songs. Given songs replace those of the list with one
+     * DELETE and, unless the list is empty, one INSERT statement executed as a JDBC batch.
+     * @param songList the id and owner of the list to update and the new properties
+     * @param updateVisibility <code>false</code> to keep the visibility of the list
+     * @return <code>false</code> if no list with the id belongs to the owner, nothing has been changed then
+     */
+    boolean updateList(SongList songList, boolean updateVisibility) throws PersistenceException;
 
-    void deleteList(Integer id) throws PersistenceException, IndexOutOfBoundsException;
+    /**Deletes the list and its rows in the join table with a single statement that also checks the owner,
+     * without reading the list first.
+     * @return <code>false</code> if no list with the id belongs to the owner
+     */
+    boolean deleteList(Integer id, String ownerId) throws PersistenceException;
 
     int saveList(SongList songList) throws PersistenceException;
 }
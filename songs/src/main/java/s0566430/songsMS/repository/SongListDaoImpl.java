@@ -1,14 +1,22 @@
 package s0566430.songsMS.repository;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import s0566430.songsMS.model.Song;
 import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
 
 import javax.persistence.PersistenceException;
+import java.sql.PreparedStatement;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Repository
 @Transactional
@@ -21,65 +29,124 @@ public class SongListDaoImpl implements SongListDao{
     }
 
     @Override
-    public List<SongList> findAllPublicListsByUserId(String id) throws PersistenceException {
+    public List<SongListSummary> findListSummariesByUserId(String id, boolean includePrivate) throws PersistenceException {
         try {
-            return sessionFactory.getCurrentSession().createNativeQuery("SELECT * FROM songlists WHERE ownerid = '" + id + "' AND isprivate = false ", SongList.class).getResultList();
+            return sessionFactory.getCurrentSession().createQuery(
+                    "SELECT new s0566430.songsMS.model.SongListSummary(l.listId, l.listName, l.isPrivate, size(l.songs)) " +
+                    "FROM SongList l WHERE l.ownerId = :ownerId" + (includePrivate ? "" : " AND l.isPrivate = false") + " ORDER BY l.listId",
+                    SongListSummary.class)
+                    .setParameter("ownerId", id)
+                    .getResultList();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
     @Override
-    public List<SongList> findAllListsByUserId(String id) throws PersistenceException {
+    public List<SongList> findListsWithSongsByUserId(String id, boolean includePrivate) throws PersistenceException {
         try {
-            return sessionFactory.getCurrentSession().createNativeQuery("SELECT * FROM songlists WHERE ownerid = '" + id + "'", SongList.class).getResultList();
+            return sessionFactory.getCurrentSession().createQuery(
+                    "SELECT DISTINCT l FROM SongList l LEFT JOIN FETCH l.songs " +
+                    "WHERE l.ownerId = :ownerId" + (includePrivate ? "" : " AND l.isPrivate = false") + " ORDER BY l.listId",
+                    SongList.class)
+                    .setParameter("ownerId", id)
+                    // removes the duplicates of the join in memory instead of in SQL
+                    .setHint(QueryHints.HINT_PASS_DISTINCT_THROUGH, false)
+                    .getResultList();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
+    @Override
+    public void streamListsByUserId(String id, boolean includePrivate, Consumer<? super SongList> consumer) throws PersistenceException {
+        Session session = sessionFactory.getCurrentSession();
+        // scrolled results do not load eager collections, so the songs are fetched with the lists
+        String hql = "SELECT l FROM SongList l LEFT JOIN FETCH l.songs WHERE l.ownerId = :ownerId" + (includePrivate ? "" : " AND l.isPrivate = false") + " ORDER BY l.listId";
+        QueryStreams.forEach(session, session.createQuery(hql, SongList.class).setParameter("ownerId", id), consumer);
+    }
+
     @Override
     public SongList findListById(Integer id) throws PersistenceException {
         try {
-            return sessionFactory.getCurrentSession().get(SongList.class, id);
+            SongList songList = sessionFactory.getCurrentSession().get(SongList.class, id);
+            if (songList != null) Hibernate.initialize(songList.getSongs());
+            return songList;
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
     @Override
-    public Void updateList(SongList songList) throws PersistenceException, IndexOutOfBoundsException {
+    public boolean updateList(SongList songList, boolean updateVisibility) throws PersistenceException {
+        int listId = songList.getListId();
         try {
-            if (findListById(songList.getListId()) == null)
-                throw new IndexOutOfBoundsException("songlist to be updated does not exist (invalid id: "+songList.getListId()+")");
-            sessionFactory.getCurrentSession().clear();
-            sessionFactory.getCurrentSession().update(songList);
-        } catch (IndexOutOfBoundsException e) {
-            throw e;
+            Session session = sessionFactory.getCurrentSession();
+            // one of four fixed statements, so that they stay in the statement caches
+            Query<?> update = session.createQuery(
+                    "UPDATE SongList l SET " + (songList.getListName() != null ? "l.listName = :listName, " : "") +
+                    (updateVisibility ? "l.isPrivate = :isPrivate, " : "") +
+                    "l.version = l.version + 1, l.modifiedAt = :modifiedAt WHERE l.listId = :listId AND l.ownerId = :ownerId")
+                    .setParameter("modifiedAt", System.currentTimeMillis())
+                    .setParameter("listId", listId)
+                    .setParameter("ownerId", songList.getOwnerId());
+            if (songList.getListName() != null) update.setParameter("listName", songList.getListName());
+            if (updateVisibility) update.setParameter("isPrivate", songList.getIsPrivate());
+            if (update.executeUpdate() == 0)
+                return false;
+
+            List<Song> songs = songList.getSongs();
+            if (songs == null)
+                return true;
+            // the join table is not reachable with HQL, the songs are replaced with one delete and one batch of inserts
+            session.createNativeQuery("DELETE FROM songlists_songs WHERE listId = :listId")
+                    .addSynchronizedQuerySpace("songlists_songs")
+                    .setParameter("listId", listId)
+                    .executeUpdate();
+            if (!songs.isEmpty()) {
+                session.doWork(connection -> {
+                    try (PreparedStatement insert = connection.prepareStatement("INSERT INTO songlists_songs (listId, songId) VALUES (?, ?)")) {
+                        for (Song song : songs) {
+                            insert.setInt(1, listId);
+                            insert.setInt(2, song.getId());
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
+                });
+            }
+            // native statements only evict cached collections through their elements, i.e. all cached songs,
+            // so only the songs of this list are evicted, now and once the transaction is completed
+            evictSongs(listId);
+            ((SessionImplementor) session).getActionQueue().registerProcess((success, s) -> evictSongs(listId));
+            return true;
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
-        return null;
     }
 
     @Override
-    public void deleteList(Integer id) throws PersistenceException, IndexOutOfBoundsException {
+    public boolean deleteList(Integer id, String ownerId) throws PersistenceException {
         try {
-            if (findListById(id) == null)
-                throw new IndexOutOfBoundsException("songList to be deleted does not exist (invalid id: "+id+")");
-            Session s = sessionFactory.getCurrentSession();
-            s.clear();
-            s.delete(s.get(SongList.class, id));
-        } catch (IndexOutOfBoundsException e) {
-            throw e;
+            // also deletes the rows of the list in songlists_songs
+            return sessionFactory.getCurrentSession().createQuery("DELETE FROM SongList l WHERE l.listId = :listId AND l.ownerId = :ownerId")
+                    .setParameter("listId", id)
+                    .setParameter("ownerId", ownerId)
+                    .executeUpdate() > 0;
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
     }
 
+    private void evictSongs(int listId) {
+        sessionFactory.getCache().evictCollectionData(SongList.class.getName() + ".songs", listId);
+    }
+
     @Override
     public int saveList(SongList songList) throws PersistenceException {
         try {
+            songList.setVersion(0);
+            songList.setModifiedAt(System.currentTimeMillis());
             return (int) sessionFactory.getCurrentSession().save(songList);
         } catch (Exception e) {
             throw new PersistenceException(e);
@@ -0,0 +1,75 @@
+package s0566430.songsMS.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import s0566430.songsMS.controller.JsonConverter;
+import s0566430.songsMS.model.Song;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON conversion of the song endpoints by {@link JsonConverter}, with and without Blackbird,
+ * with the previous per-controller <code>ObjectMapper</code> that resolved the type on every call.
+ * <code>write*</code> serializes the listing of <code>GET /songs</code>, <code>read*</code> parses the body of <code>POST /songs</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonConverterBenchmark {
+
+    private static final String SONG_JSON = "{\"title\":\"Never Gonna Give You Up\",\"artist\":\"Rick Astley\",\"label\":\"RCA\",\"released\":1987}";
+
+    private List<Song> songs;
+    private ObjectMapper legacyMapper;
+    private JsonConverter converter;
+    private JsonConverter blackbirdConverter;
+
+    @Setup
+    public void setUp() {
+        songs = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            Song song = new Song("Never Gonna Give You Up " + i, "Rick Astley", "RCA", 1987);
+            song.setId(i);
+            songs.add(song);
+        }
+        legacyMapper = new ObjectMapper();
+        converter = new JsonConverter(false);
+        blackbirdConverter = new JsonConverter(true);
+    }
+
+    @Benchmark
+    public String writeSongsLegacy() throws JsonProcessingException {
+        return legacyMapper.writeValueAsString(songs);
+    }
+
+    @Benchmark
+    public String writeSongs() throws JsonProcessingException {
+        return converter.writeSongs(songs);
+    }
+
+    @Benchmark
+    public String writeSongsBlackbird() throws JsonProcessingException {
+        return blackbirdConverter.writeSongs(songs);
+    }
+
+    @Benchmark
+    public Song readSongLegacy() throws JsonProcessingException {
+        return legacyMapper.readValue(SONG_JSON, Song.class);
+    }
+
+    @Benchmark
+    public Song readSong() throws JsonProcessingException {
+        return converter.readSong(SONG_JSON);
+    }
+
+    @Benchmark
+    public Song readSongBlackbird() throws JsonProcessingException {
+        return blackbirdConverter.readSong(SONG_JSON);
+    }
+}
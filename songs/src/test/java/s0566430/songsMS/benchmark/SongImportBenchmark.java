@@ -0,0 +1,82 @@
+package s0566430.songsMS.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.repository.SongDao;
+import s0566430.songsMS.repository.SongDaoImpl;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports 1000 songs into an in-memory database with different JDBC batch sizes, reported as songs per second.
+ * {@link #saveSongEach} is the previous way of one transaction per song, as with one POST request per song.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SongImportBenchmark.SONGS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongImportBenchmark {
+
+    static final int SONGS = 1000;
+
+    @Param({"1", "10", "50", "200"})
+    private int batchSize;
+
+    private AnnotationConfigApplicationContext context;
+    private SongDao dao;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        ResourcePropertySource properties = new ResourcePropertySource("classpath:h2.properties");
+        properties.getSource().put("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+        properties.getSource().put("hibernate.cache.use_second_level_cache", "false");
+        properties.getSource().put("hibernate.cache.use_query_cache", "false");
+        properties.getSource().put("hibernate.generate_statistics", "false");
+        context.getEnvironment().getPropertySources().addFirst(properties);
+        context.register(HibernateConfig.class, SongDaoImpl.class);
+        context.refresh();
+        dao = context.getBean(SongDao.class);
+        jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void clearSongs() {
+        jdbcTemplate.update("DELETE FROM songs");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private static List<Song> songs() {
+        List<Song> songs = new ArrayList<>(SONGS);
+        for (int i = 0; i < SONGS; i++) songs.add(new Song("title" + i, "artist" + i, "label" + i, 1950 + i % 70));
+        return songs;
+    }
+
+    @Benchmark
+    public List<Integer> saveSongs() {
+        return dao.saveSongs(songs());
+    }
+
+    @Benchmark
+    public int saveSongEach() {
+        int id = 0;
+        for (Song song : songs()) id = dao.saveSong(song);
+        return id;
+    }
+}
@@ -0,0 +1,74 @@
+package s0566430.songsMS.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.repository.SongDao;
+import s0566430.songsMS.repository.SongDaoImpl;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates a playlist of 20 songs against catalogs of different sizes in an in-memory database,
+ * comparing {@link SongDao#doAllSongsExist} with the previous <code>findAllSongs().containsAll(...)</code>.
+ * The second-level cache is disabled so that every validation reads from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongValidationBenchmark {
+
+    private static final int PLAYLIST_SIZE = 20;
+
+    @Param({"1000", "10000", "100000"})
+    private int catalogSize;
+
+    private AnnotationConfigApplicationContext context;
+    private SongDao dao;
+    private List<Song> playlist;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        ResourcePropertySource properties = new ResourcePropertySource("classpath:h2.properties");
+        properties.getSource().put("hibernate.cache.use_second_level_cache", "false");
+        properties.getSource().put("hibernate.cache.use_query_cache", "false");
+        context.getEnvironment().getPropertySources().addFirst(properties);
+        context.register(HibernateConfig.class, SongDaoImpl.class);
+        context.refresh();
+        dao = context.getBean(SongDao.class);
+
+        new JdbcTemplate(context.getBean(DataSource.class)).update(
+                "INSERT INTO songs (songid, title, artist, label, released) " +
+                "SELECT x, 'title' || x, 'artist' || x, 'label' || x, 1950 + MOD(x, 70) FROM SYSTEM_RANGE(1, ?)", catalogSize);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= PLAYLIST_SIZE; i++) ids.add(i * catalogSize / PLAYLIST_SIZE);
+        playlist = dao.findSongsByIds(ids);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean findSongsByIds() {
+        return dao.doAllSongsExist(playlist);
+    }
+
+    @Benchmark
+    public boolean legacyFindAllSongsContainsAll() {
+        return dao.findAllSongs().containsAll(playlist);
+    }
+}
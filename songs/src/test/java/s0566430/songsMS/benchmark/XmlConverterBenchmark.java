@@ -0,0 +1,70 @@
+package s0566430.songsMS.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import s0566430.songsMS.controller.XmlConverter;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongsXmlRoot;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the XML conversion of a song listing by {@link XmlConverter} with the previous conversion,
+ * which built a new <code>JAXBContext</code> and marshaller for every response.
+ * Runs on 4 threads, like concurrent requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class XmlConverterBenchmark {
+
+    @Param({"1", "100"})
+    private int songCount;
+
+    private SongsXmlRoot songs;
+    private XmlConverter formatted;
+    private XmlConverter compact;
+
+    @Setup
+    public void setUp() throws JAXBException {
+        List<Song> list = new ArrayList<>();
+        for (int i = 1; i <= songCount; i++) {
+            Song song = new Song("Never Gonna Give You Up " + i, "Rick Astley", "RCA", 1987);
+            song.setId(i);
+            list.add(song);
+        }
+        songs = new SongsXmlRoot(list);
+        formatted = new XmlConverter(true);
+        compact = new XmlConverter(false);
+    }
+
+    @Benchmark
+    public String xmlConverterFormatted() throws JAXBException {
+        return formatted.toXml(songs);
+    }
+
+    @Benchmark
+    public String xmlConverterCompact() throws JAXBException {
+        return compact.toXml(songs);
+    }
+
+    @Benchmark
+    public String legacyContextPerRequest() throws JAXBException {
+        JAXBContext context = JAXBContext.newInstance(SongsXmlRoot.class);
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+
+        StringWriter sw = new StringWriter();
+        marshaller.marshal(songs, sw);
+        return sw.toString();
+    }
+}
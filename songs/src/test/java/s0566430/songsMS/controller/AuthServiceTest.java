@@ -1,17 +1,135 @@
 package s0566430.songsMS.controller;
 
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
 import org.junit.jupiter.api.BeforeEach;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 
-@SpringBootTest
 class AuthServiceTest {
 
-    @Autowired
-    AuthService authService;
+    private static final String AUTH_URL = "http://auth/";
+    private static final String TOKEN = "abcde";
+    private static final String UNKNOWN_TOKEN = "fghij";
+    private static final String USER_ID = "user1";
+    private static final String TOKEN_SECRET = "secret";
+    /** signed with TOKEN_SECRET for USER_ID, expires 2100-01-01 */
+    private static final String SIGNED_TOKEN = "NDEwMjQ0NDgwMDAwMDp1c2VyMQ.k5biYkisIC3S01r_Twt4o5-NYa8-qIf8elDxFGF7OPA";
+
+    private AuthService authService;
+    private RestTemplate restTemplate;
+    private AtomicLong clock;
+    private EurekaClient discoveryClient;
 
     @BeforeEach
     void setUp() {
+        restTemplate = Mockito.mock(RestTemplate.class);
+        discoveryClient = Mockito.mock(EurekaClient.class);
+        InstanceInfo instance = Mockito.mock(InstanceInfo.class);
+        Mockito.when(instance.getHomePageUrl()).thenReturn(AUTH_URL);
+        Mockito.when(discoveryClient.getNextServerFromEureka(anyString(), anyBoolean())).thenReturn(instance);
+
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + TOKEN, String.class)).thenReturn(ResponseEntity.ok(USER_ID));
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + UNKNOWN_TOKEN, String.class))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+
+        clock = new AtomicLong(0);
+        authService = new AuthService(restTemplate, discoveryClient, new TokenVerifier(""), new TokenCache(2, 1000, 100, clock::get));
+    }
+
+    @Test
+    void getUserIdForToken_cachesKnownToken() {
+        assertEquals(USER_ID, authService.getUserIdForToken(TOKEN));
+        assertEquals(USER_ID, authService.getUserIdForToken(TOKEN));
+        assertTrue(authService.doesTokenExist(TOKEN));
+
+        Mockito.verify(restTemplate, Mockito.times(1)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+        assertEquals(2, authService.getTokenCacheHits());
+        assertEquals(1, authService.getTokenCacheMisses());
+    }
+
+    @Test
+    void getUserIdForToken_cachesUnknownToken() {
+        assertNull(authService.getUserIdForToken(UNKNOWN_TOKEN));
+        assertFalse(authService.doesTokenExist(UNKNOWN_TOKEN));
+
+        Mockito.verify(restTemplate, Mockito.times(1)).getForEntity(eq(AUTH_URL + UNKNOWN_TOKEN), eq(String.class));
+    }
+
+    @Test
+    void getUserIdForToken_expiredEntriesAreFetchedAgain() {
+        authService.getUserIdForToken(TOKEN);
+        authService.getUserIdForToken(UNKNOWN_TOKEN);
+
+        clock.set(100);
+        authService.getUserIdForToken(TOKEN);
+        authService.getUserIdForToken(UNKNOWN_TOKEN);
+        Mockito.verify(restTemplate, Mockito.times(1)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+        Mockito.verify(restTemplate, Mockito.times(2)).getForEntity(eq(AUTH_URL + UNKNOWN_TOKEN), eq(String.class));
+
+        clock.set(1000);
+        authService.getUserIdForToken(TOKEN);
+        Mockito.verify(restTemplate, Mockito.times(2)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
     }
 
-}
\ No newline at end of file
+    @Test
+    void getUserIdForToken_evictsLeastRecentlyUsed() {
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + "token2", String.class)).thenReturn(ResponseEntity.ok("user2"));
+        Mockito.when(restTemplate.getForEntity(AUTH_URL + "token3", String.class)).thenReturn(ResponseEntity.ok("user3"));
+
+        authService.getUserIdForToken(TOKEN);
+        authService.getUserIdForToken("token2");
+        authService.getUserIdForToken(TOKEN);
+        authService.getUserIdForToken("token3");
+        authService.getUserIdForToken(TOKEN);
+        authService.getUserIdForToken("token2");
+
+        Mockito.verify(restTemplate, Mockito.times(1)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+        Mockito.verify(restTemplate, Mockito.times(2)).getForEntity(eq(AUTH_URL + "token2"), eq(String.class));
+    }
+
+    @Test
+    void invalidateToken() {
+        authService.getUserIdForToken(TOKEN);
+        authService.invalidateToken(TOKEN);
+        authService.getUserIdForToken(TOKEN);
+
+        Mockito.verify(restTemplate, Mockito.times(2)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+    }
+
+    @Test
+    void getUserIdForToken_noToken() {
+        assertNull(authService.getUserIdForToken(null));
+        Mockito.verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenVerifiedLocally() {
+        authService = new AuthService(restTemplate, discoveryClient, new TokenVerifier(TOKEN_SECRET), new TokenCache(2, 1000, 100));
+
+        assertEquals(USER_ID, authService.getUserIdForToken(SIGNED_TOKEN));
+        assertNull(authService.getUserIdForToken(SIGNED_TOKEN.replace('.', 'a') + ".AAAA"));
+        assertEquals(USER_ID, authService.getUserIdForToken(TOKEN));
+        Mockito.verify(restTemplate, Mockito.never()).getForEntity(eq(AUTH_URL + SIGNED_TOKEN), eq(String.class));
+        Mockito.verify(restTemplate, Mockito.times(1)).getForEntity(eq(AUTH_URL + TOKEN), eq(String.class));
+    }
+
+    @Test
+    void getUserIdForToken_signedTokenInvalid() {
+        authService = new AuthService(restTemplate, discoveryClient, new TokenVerifier("other secret"), new TokenCache(2, 1000, 100));
+
+        assertNull(authService.getUserIdForToken(SIGNED_TOKEN));
+        Mockito.verifyNoInteractions(restTemplate);
+    }
+}
@@ -0,0 +1,83 @@
+package s0566430.songsMS.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static s0566430.songsMS.controller.ResponseCache.Kind.SONG;
+import static s0566430.songsMS.controller.ResponseCache.Kind.SONG_LIST;
+
+class ResponseCacheTest {
+
+    private static final String JSON = "application/json";
+    private static final String XML = "application/xml";
+
+    private ResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ResponseCache(10);
+    }
+
+    @Test
+    void get_onlyForSameETag() {
+        byte[] body = {1, 2, 3};
+        cache.put(SONG, 1, JSON, "0-json", body);
+
+        assertSame(body, cache.get(SONG, 1, JSON, "0-json"));
+        assertNull(cache.get(SONG, 1, JSON, "1-json"));
+        assertNull(cache.get(SONG, 1, XML, "0-json"));
+        assertNull(cache.get(SONG_LIST, 1, JSON, "0-json"));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedBeyondMaxBytes() {
+        cache.put(SONG, 1, JSON, "0-json", new byte[4]);
+        cache.put(SONG, 2, JSON, "0-json", new byte[4]);
+        cache.get(SONG, 1, JSON, "0-json");
+        cache.put(SONG, 3, JSON, "0-json", new byte[4]);
+
+        assertNotNull(cache.get(SONG, 1, JSON, "0-json"));
+        assertNull(cache.get(SONG, 2, JSON, "0-json"));
+        assertNotNull(cache.get(SONG, 3, JSON, "0-json"));
+        assertEquals(8, cache.getBytes());
+    }
+
+    @Test
+    void put_replacesBody() {
+        cache.put(SONG, 1, JSON, "0-json", new byte[4]);
+        cache.put(SONG, 1, JSON, "1-json", new byte[6]);
+
+        assertNull(cache.get(SONG, 1, JSON, "0-json"));
+        assertNotNull(cache.get(SONG, 1, JSON, "1-json"));
+        assertEquals(6, cache.getBytes());
+    }
+
+    @Test
+    void put_ignoresBodiesLargerThanMaxBytes() {
+        cache.put(SONG, 1, JSON, "0-json", new byte[4]);
+        cache.put(SONG, 2, JSON, "0-json", new byte[11]);
+
+        assertNotNull(cache.get(SONG, 1, JSON, "0-json"));
+        assertNull(cache.get(SONG, 2, JSON, "0-json"));
+        assertEquals(4, cache.getBytes());
+    }
+
+    @Test
+    void invalidate_removesAllMediaTypes() {
+        cache.put(SONG, 1, JSON, "0-json", new byte[2]);
+        cache.put(SONG, 1, XML, "0-xml", new byte[2]);
+        cache.put(SONG, 11, JSON, "0-json", new byte[2]);
+        cache.put(SONG_LIST, 1, JSON, "0-1-json", new byte[2]);
+
+        cache.invalidate(SONG, 1);
+
+        assertNull(cache.get(SONG, 1, JSON, "0-json"));
+        assertNull(cache.get(SONG, 1, XML, "0-xml"));
+        assertNotNull(cache.get(SONG, 11, JSON, "0-json"));
+        assertNotNull(cache.get(SONG_LIST, 1, JSON, "0-1-json"));
+        assertEquals(4, cache.getBytes());
+    }
+}
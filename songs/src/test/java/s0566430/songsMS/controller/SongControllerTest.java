@@ -6,15 +6,24 @@ import org.mockito.Mockito;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import s0566430.songsMS.model.Song;
 import s0566430.songsMS.repository.SongDao;
 
+import javax.persistence.PersistenceException;
+import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,12 +46,15 @@ class SongControllerTest {
     private MockMvc mvc;
     private SongDao dao;
     private AuthService helper;
+    private JsonConverter jsonConverter;
 
     @BeforeEach
-    void setUp() throws IOException {
+    void setUp() throws IOException, JAXBException {
         dao = Mockito.mock(SongDao.class);
         helper = Mockito.mock(AuthService.class);
-        mvc = MockMvcBuilders.standaloneSetup(new SongController(dao, helper)).build();
+        jsonConverter = Mockito.spy(new JsonConverter(false));
+        mvc = MockMvcBuilders.standaloneSetup(new SongController(dao, new XmlConverter(true), jsonConverter, new ResponseCache(1 << 20), 2))
+                .setCustomArgumentResolvers(new AuthenticatedUserArgumentResolver(helper)).build();
         SONG_1.setId(1);
         SONG_2.setId(2);
         GET_SONG_JSON = Files.readString(Path.of(FILE_PATH + "getSongPayload.json"));
@@ -57,7 +69,6 @@ class SongControllerTest {
             if (arg.getArgument(0).equals(TOKEN)) return USER_ID; else return null;
         });
         Mockito.when(helper.doesTokenExist(any())).thenCallRealMethod();
-        Mockito.when(helper.doesTokenMatchUserId(any(), any())).thenCallRealMethod();
     }
 
     private void setUpSong() {
@@ -136,6 +147,134 @@ class SongControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    // GET songs paged
+
+    @Test
+    void getSongsPage_Keyset() throws Exception {
+        Mockito.when(dao.findSongsAfter(0, 2)).thenReturn(Arrays.asList(SONG_1, SONG_2));
+
+        mvc.perform(get("/?limit=1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1}]"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().string(HttpHeaders.LINK, "</rest/songs?after=1&limit=1>; rel=\"next\""))
+                .andExpect(header().string(SongController.NEXT_CURSOR_HEADER, "1"));
+        Mockito.verify(dao, Mockito.never()).findAllSongs();
+    }
+
+    @Test
+    void getSongsPage_KeysetLastPage() throws Exception {
+        Mockito.when(dao.findSongsAfter(1, 2)).thenReturn(Collections.singletonList(SONG_2));
+
+        mvc.perform(get("/?after=1&limit=1").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(xpath("/songs/song/id").string("2"))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
+                .andExpect(header().doesNotExist(SongController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void getSongsPage_DefaultLimit() throws Exception {
+        Mockito.when(dao.findSongsAfter(1, SongController.DEFAULT_PAGE_SIZE + 1)).thenReturn(Collections.singletonList(SONG_2));
+
+        mvc.perform(get("/?after=1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2));
+    }
+
+    @Test
+    void getSongsPage_Offset() throws Exception {
+        Mockito.when(dao.findSongs(1, 2)).thenReturn(Collections.singletonList(SONG_2));
+        Mockito.when(dao.findSongs(0, 2)).thenReturn(Arrays.asList(SONG_1, SONG_2));
+
+        mvc.perform(get("/?offset=0&limit=1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(header().string(HttpHeaders.LINK, "</rest/songs?offset=1&limit=1>; rel=\"next\""));
+        mvc.perform(get("/?offset=1&limit=1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    void getSongsPage_ParametersInvalid() throws Exception {
+        mvc.perform(get("/?limit=0").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/?limit=" + (SongController.MAX_PAGE_SIZE + 1)).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/?offset=-1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/?offset=1&after=1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/?after=abc").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(dao);
+    }
+
+    // GET all songs streamed
+
+    private void setUpTwoSongsStreamed() {
+        Mockito.doAnswer(arg -> {
+            Consumer<Song> consumer = arg.getArgument(0);
+            consumer.accept(SONG_1);
+            consumer.accept(SONG_2);
+            return null;
+        }).when(dao).streamAllSongs(any());
+    }
+
+    @Test
+    void streamAllSongs_Json() throws Exception {
+        setUpTwoSongsStreamed();
+
+        MvcResult result = mvc.perform(get("/?stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(GET_ALL_SONGS_JSON, true));
+        Mockito.verify(dao, Mockito.never()).findAllSongs();
+    }
+
+    @Test
+    void streamAllSongs_Xml() throws Exception {
+        setUpTwoSongsStreamed();
+
+        MvcResult result = mvc.perform(get("/?stream=true").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(content().xml(GET_ALL_SONGS_XML));
+    }
+
+    @Test
+    void streamAllSongs_Empty() throws Exception {
+        MvcResult result = mvc.perform(get("/?stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    void streamAllSongs_MediaTypeNotAcceptable() throws Exception {
+        mvc.perform(get("/?stream=true").accept(MediaType.TEXT_PLAIN).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNotAcceptable());
+        Mockito.verifyNoInteractions(dao);
+    }
+
+    @Test
+    void streamAllSongs_AuthTokenInvalid() throws Exception {
+        mvc.perform(get("/?stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN+'a'))
+                .andExpect(status().isUnauthorized());
+        Mockito.verifyNoInteractions(dao);
+    }
+
     // GET one song
 
     @Test
@@ -158,6 +297,92 @@ class SongControllerTest {
                 .andExpect(content().xml(GET_SONG_XML));
     }
 
+    @Test
+    void getSong_ConditionalETag() throws Exception {
+        Song song = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+        song.setId(1);
+        song.setVersion(3);
+        Mockito.when(dao.findSong(1)).thenReturn(song);
+
+        String etag = mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        // another song at the same version
+        Song other = new Song("Never Gonna Give You Up Again", "Rick Astley", "RCA", 1989);
+        other.setId(2);
+        other.setVersion(3);
+        Mockito.when(dao.findSong(2)).thenReturn(other);
+        mvc.perform(get("/2").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        song.setVersion(4);
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().json(GET_SONG_JSON));
+    }
+
+    @Test
+    void getSong_RenderedOnce() throws Exception {
+        Song song = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+        song.setId(1);
+        Mockito.when(dao.findSong(1)).thenReturn(song);
+
+        for (int i = 0; i < 3; i++)
+            mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                    .andExpect(status().isOk())
+                    .andExpect(content().json(GET_SONG_JSON));
+        Mockito.verify(jsonConverter, Mockito.times(1)).writeSong(any());
+
+        // a new version is rendered again
+        song.setVersion(1);
+        song.setTitle("Never Gonna Let You Down");
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Never Gonna Let You Down"));
+        Mockito.verify(jsonConverter, Mockito.times(2)).writeSong(any());
+    }
+
+    @Test
+    void getSong_CacheInvalidatedByDelete() throws Exception {
+        setUpSong();
+
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk());
+        mvc.perform(delete("/1").header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isNoContent());
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk());
+        Mockito.verify(jsonConverter, Mockito.times(2)).writeSong(any());
+    }
+
+    @Test
+    void getSong_ConditionalLastModified() throws Exception {
+        Song song = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+        song.setId(1);
+        song.setModifiedAt(1_600_000_000_000L);
+        Mockito.when(dao.findSong(1)).thenReturn(song);
+
+        String lastModified = mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isNotModified());
+
+        song.setModifiedAt(1_600_000_001_000L);
+        mvc.perform(get("/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void getSong_IdInvalid() throws Exception {
         setUpSong();
@@ -330,6 +555,105 @@ class SongControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    // POST songs import
+
+    private List<List<Song>> createStub_SaveSongs() {
+        List<List<Song>> batches = new ArrayList<>();
+        AtomicInteger nextId = new AtomicInteger(1);
+        Mockito.when(dao.saveSongs(any())).thenAnswer(invocation -> {
+            List<Song> batch = new ArrayList<>(invocation.<List<Song>>getArgument(0));
+            batches.add(batch);
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) ids.add(nextId.getAndIncrement());
+            return ids;
+        });
+        return batches;
+    }
+
+    @Test
+    void importSongs_JsonArray() throws Exception {
+        List<List<Song>> batches = createStub_SaveSongs();
+        String body = "[" + POST_SONG_JSON + "," + GET_SONG_JSON + ",{\"title\":\"Test Song\"},{\"artist\":\"Rick Astley\"}," + POST_SONG_JSON + "]";
+
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].status").value(201))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].status").value(400))
+                .andExpect(jsonPath("$[1].error").value("song IDs are not to be manually assigned"))
+                .andExpect(jsonPath("$[2].id").value(2))
+                .andExpect(jsonPath("$[3].status").value(400))
+                .andExpect(jsonPath("$[3].error").value("property 'title' must be provided"))
+                .andExpect(jsonPath("$[4].index").value(4))
+                .andExpect(jsonPath("$[4].id").value(3));
+
+        // batch size is 2
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("Test Song", batches.get(0).get(1).getTitle());
+        assertEquals(1, batches.get(1).size());
+    }
+
+    @Test
+    void importSongs_JsonArraySyntaxInvalid() throws Exception {
+        List<List<Song>> batches = createStub_SaveSongs();
+
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN)
+                        .content("[" + POST_SONG_JSON + ",{\"title\":"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value(201))
+                .andExpect(jsonPath("$[1].status").value(400));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void importSongs_NoArray() throws Exception {
+        createStub_SaveSongs();
+
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).content(POST_SONG_JSON))
+                .andExpect(status().isBadRequest());
+        Mockito.verify(dao, Mockito.never()).saveSongs(any());
+    }
+
+    @Test
+    void importSongs_Ndjson() throws Exception {
+        List<List<Song>> batches = createStub_SaveSongs();
+        String body = "{\"title\":\"Song 1\"}\n\n{\"title\":\n{\"title\":\"Song 2\",\"released\":\"never\"}\n{\"title\":\"Song 3\"}\n";
+
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_NDJSON).header(HttpHeaders.AUTHORIZATION, TOKEN).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].status").value(400))
+                .andExpect(jsonPath("$[2].status").value(400))
+                .andExpect(jsonPath("$[3].id").value(2));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void importSongs_BatchFailed() throws Exception {
+        Mockito.when(dao.saveSongs(any()))
+                .thenReturn(Arrays.asList(1, 2))
+                .thenThrow(new PersistenceException("connection lost"));
+        String body = "[{\"title\":\"Song 1\"},{\"title\":\"Song 2\"},{\"title\":\"Song 3\"}]";
+
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].status").value(201))
+                .andExpect(jsonPath("$[2].status").value(500))
+                .andExpect(jsonPath("$[2].error").value("connection lost"));
+    }
+
+    @Test
+    void importSongs_AuthTokenMissing() throws Exception {
+        mvc.perform(post("/import").contentType(MediaType.APPLICATION_JSON).content("[" + POST_SONG_JSON + "]"))
+                .andExpect(status().isUnauthorized());
+        Mockito.verifyNoInteractions(dao);
+    }
+
     // PUT song
 
     private AtomicReference<Song> createStub_UpdateSong() {
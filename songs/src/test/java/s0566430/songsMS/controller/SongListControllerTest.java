@@ -6,21 +6,28 @@ import org.mockito.Mockito;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import s0566430.songsMS.model.Song;
 import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
 import s0566430.songsMS.repository.SongDao;
 import s0566430.songsMS.repository.SongListDao;
 
+import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -52,11 +59,12 @@ public class SongListControllerTest {
     private AuthService helper;
 
     @BeforeEach
-    void setUp() throws IOException {
+    void setUp() throws IOException, JAXBException {
         songListDao = Mockito.mock(SongListDao.class);
         songDao = Mockito.mock(SongDao.class);
         helper = Mockito.mock(AuthService.class);
-        mvc = MockMvcBuilders.standaloneSetup(new SongListController(songListDao, songDao, helper)).build();
+        mvc = MockMvcBuilders.standaloneSetup(new SongListController(songListDao, songDao, helper, new XmlConverter(true), new JsonConverter(false), new ResponseCache(1 << 20)))
+                .setCustomArgumentResolvers(new AuthenticatedUserArgumentResolver(helper)).build();
 
         GET_SONGLIST_JSON = Files.readString(Path.of(FILE_PATH + "getSongList.json"));
         GET_ALL_SONGLISTS_JSON = Files.readString(Path.of(FILE_PATH + "getAllSongLists.json"));
@@ -78,7 +86,6 @@ public class SongListControllerTest {
             }
         });
         Mockito.when(helper.doesTokenExist(any())).thenCallRealMethod();
-        Mockito.when(helper.doesTokenMatchUserId(any(), any())).thenCallRealMethod();
         Mockito.when(helper.doesUserIdExist(anyString())).then(arg -> {
             switch ((String) arg.getArgument(0)) {
                 case USER_ID_1:
@@ -92,7 +99,10 @@ public class SongListControllerTest {
         SONG_1.setId(5);
         SONG_2.setId(4);
         SONG_4.setId(3);
-        Mockito.when(songDao.findAllSongs()).thenReturn(Arrays.asList(SONG_1, SONG_2, SONG_3, SONG_4));
+        Mockito.when(songDao.doAllSongsExist(any())).then(arg -> {
+            Collection<Song> songs = arg.getArgument(0);
+            return songs == null || Arrays.asList(SONG_1, SONG_2, SONG_3, SONG_4).containsAll(songs);
+        });
     }
 
     void setUpSongLists() {
@@ -101,14 +111,29 @@ public class SongListControllerTest {
         SONG_LIST_PRIVATE_2.setSongs(Arrays.asList(SONG_2));
         SONG_LIST_PRIVATE_2.setListId(2);
 
-        Mockito.when(songListDao.findAllListsByUserId("user1"))
+        Mockito.when(songListDao.findListsWithSongsByUserId("user1", true))
                 .thenReturn(Arrays.asList(new SongList[]{SONG_LIST_PRIVATE_1, SONG_LIST_PRIVATE_2}));
-        Mockito.when(songListDao.findAllListsByUserId("user2"))
+        Mockito.when(songListDao.findListsWithSongsByUserId("user2", true))
                 .thenReturn(Arrays.asList(new SongList[]{SONG_LIST_PUBLIC}));
+        Mockito.when(songListDao.findListSummariesByUserId("user1", true))
+                .thenReturn(Arrays.asList(new SongListSummary(1, "list1", true, 2), new SongListSummary(2, "list2", true, 1)));
 
         Mockito.when(songListDao.findListById(1)).thenReturn(SONG_LIST_PRIVATE_1);
         Mockito.when(songListDao.findListById(2)).thenReturn(SONG_LIST_PRIVATE_2);
         Mockito.when(songListDao.findListById(3)).thenReturn(SONG_LIST_PUBLIC);
+        // writes check the owner in their statement
+        Mockito.when(songListDao.updateList(any(), anyBoolean())).then(invocation -> {
+            SongList update = invocation.getArgument(0);
+            return isOwnedBy(update.getListId(), update.getOwnerId());
+        });
+        Mockito.when(songListDao.deleteList(any(), any()))
+                .then(invocation -> isOwnedBy(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    private static boolean isOwnedBy(int listId, String ownerId) {
+        for (SongList songList : new SongList[]{SONG_LIST_PRIVATE_1, SONG_LIST_PRIVATE_2, SONG_LIST_PUBLIC})
+            if (songList.getListId() == listId) return songList.getOwnerId().equals(ownerId);
+        return false;
     }
 
     // GET all songlists by user
@@ -120,9 +145,11 @@ public class SongListControllerTest {
         mvc.perform(get("/playlists?userId=user1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(content().json(GET_ALL_SONGLISTS_JSON, true));
+                .andExpect(content().json("[{\"listId\":1,\"listName\":\"list1\",\"isPrivate\":true,\"songCount\":2}," +
+                        "{\"listId\":2,\"listName\":\"list2\",\"isPrivate\":true,\"songCount\":1}]", true));
 
-        Mockito.verify(songListDao).findAllListsByUserId("user1");
+        Mockito.verify(songListDao).findListSummariesByUserId("user1", true);
+        Mockito.verify(songListDao, Mockito.never()).findListsWithSongsByUserId(any(), anyBoolean());
     }
 
     @Test
@@ -130,6 +157,31 @@ public class SongListControllerTest {
         setUpSongLists();
 
         mvc.perform(get("/playlists?userId=user1").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(content().xml("<songlists>" +
+                        "<songlist><listId>1</listId><listName>list1</listName><isPrivate>true</isPrivate><songCount>2</songCount></songlist>" +
+                        "<songlist><listId>2</listId><listName>list2</listName><isPrivate>true</isPrivate><songCount>1</songCount></songlist>" +
+                        "</songlists>"));
+    }
+
+    @Test
+    void getAllSongListsByUser_ExpandSongs_Json() throws Exception {
+        setUpSongLists();
+
+        mvc.perform(get("/playlists?userId=user1&expand=songs").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(GET_ALL_SONGLISTS_JSON, true));
+
+        Mockito.verify(songListDao).findListsWithSongsByUserId("user1", true);
+    }
+
+    @Test
+    void getAllSongListsByUser_ExpandSongs_Xml() throws Exception {
+        setUpSongLists();
+
+        mvc.perform(get("/playlists?userId=user1&expand=songs").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_XML))
                 .andExpect(content().xml(GET_ALL_SONGLISTS_XML));
@@ -154,7 +206,27 @@ public class SongListControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(content().json("[]", true));
 
-        Mockito.verify(songListDao).findAllPublicListsByUserId("user2");
+        Mockito.verify(songListDao).findListSummariesByUserId("user2", false);
+    }
+
+    @Test
+    void getAllSongListsByUser_ExpandSongs_ForeignOwner() throws Exception {
+        setUpSongLists();
+
+        mvc.perform(get("/playlists?userId=user2&expand=songs").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]", true));
+
+        Mockito.verify(songListDao).findListsWithSongsByUserId("user2", false);
+    }
+
+    @Test
+    void getAllSongListsByUser_ExpandInvalid() throws Exception {
+        setUpSongLists();
+
+        mvc.perform(get("/playlists?userId=user1&expand=owner").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(songListDao);
     }
 
     @Test
@@ -197,6 +269,74 @@ public class SongListControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    // GET all songlists by user streamed
+
+    private void setUpSongListsStreamed() {
+        setUpSongLists();
+        Mockito.doAnswer(arg -> {
+            Consumer<SongList> consumer = arg.getArgument(2);
+            consumer.accept(SONG_LIST_PRIVATE_1);
+            consumer.accept(SONG_LIST_PRIVATE_2);
+            return null;
+        }).when(songListDao).streamListsByUserId(eq("user1"), eq(true), any());
+    }
+
+    @Test
+    void streamAllSongListsByUser_Json() throws Exception {
+        setUpSongListsStreamed();
+
+        MvcResult result = mvc.perform(get("/playlists?userId=user1&stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(GET_ALL_SONGLISTS_JSON, true));
+        Mockito.verify(songListDao, Mockito.never()).findListsWithSongsByUserId(any(), anyBoolean());
+    }
+
+    @Test
+    void streamAllSongListsByUser_Xml() throws Exception {
+        setUpSongListsStreamed();
+
+        MvcResult result = mvc.perform(get("/playlists?userId=user1&stream=true").accept(MediaType.APPLICATION_XML).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_XML))
+                .andExpect(content().xml(GET_ALL_SONGLISTS_XML));
+    }
+
+    @Test
+    void streamAllSongListsByUser_ForeignOwner() throws Exception {
+        setUpSongListsStreamed();
+
+        MvcResult result = mvc.perform(get("/playlists?userId=user2&stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]", true));
+        Mockito.verify(songListDao).streamListsByUserId(eq("user2"), eq(false), any());
+    }
+
+    @Test
+    void streamAllSongListsByUser_UserNotFound() throws Exception {
+        setUpSongListsStreamed();
+
+        mvc.perform(get("/playlists?userId=user4&stream=true").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void streamAllSongListsByUser_AuthTokenMissing() throws Exception {
+        setUpSongListsStreamed();
+
+        mvc.perform(get("/playlists?userId=user1&stream=true").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
     // GET songlist by id
 
     @Test
@@ -231,6 +371,52 @@ public class SongListControllerTest {
                 .andExpect(status().isForbidden());
     }
 
+    @Test
+    void getSongList_ConditionalETag() throws Exception {
+        Song song = new Song("We Built This City", "Starship", "Grunt/RCA", 1985);
+        song.setId(5);
+        SongList songList = new SongList(USER_ID_1, "list1", true);
+        songList.setListId(7);
+        songList.setSongs(Arrays.asList(song));
+        Mockito.when(songListDao.findListById(7)).thenReturn(songList);
+
+        String etag = mvc.perform(get("/playlists/7").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/playlists/7").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // another list with the same songs at the same version
+        SongList other = new SongList(USER_ID_1, "list2", true);
+        other.setListId(8);
+        other.setSongs(Arrays.asList(song));
+        Mockito.when(songListDao.findListById(8)).thenReturn(other);
+        mvc.perform(get("/playlists/8").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        // the songs are part of the representation of the list
+        song.setVersion(1);
+        String songChanged = mvc.perform(get("/playlists/7").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        songList.setVersion(1);
+        mvc.perform(get("/playlists/7").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).header(HttpHeaders.IF_NONE_MATCH, songChanged))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getSongList_ConditionalForeignOwner() throws Exception {
+        setUpSongLists();
+
+        String etag = mvc.perform(get("/playlists/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(get("/playlists/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_2).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isForbidden());
+    }
+
     @Test
     void getSongList_IdInvalid() throws Exception {
         setUpSongLists();
@@ -335,6 +521,28 @@ public class SongListControllerTest {
                 .andExpect(header().doesNotExist("Location"));
     }
 
+    @Test
+    void postSongList_SongsLookedUpById() throws Exception {
+        createStub_SaveSongList();
+        setUpSongLists();
+
+        mvc.perform(post("/playlists").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content(POST_SONGLIST_JSON))
+                .andExpect(status().isCreated());
+
+        Mockito.verify(songDao).doAllSongsExist(Arrays.asList(SONG_1, SONG_2));
+        Mockito.verify(songDao, Mockito.never()).findAllSongs();
+    }
+
+    @Test
+    void postSongList_SongIdUnknown() throws Exception {
+        createStub_SaveSongList();
+        setUpSongLists();
+
+        mvc.perform(post("/playlists").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content(POST_SONGLIST_JSON.replace("\"id\": 4", "\"id\": 42")))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist("Location"));
+    }
+
     @Test
     void postSongList_JsonEmpty() throws Exception {
         AtomicReference<SongList> songList = createStub_SaveSongList();
@@ -391,10 +599,10 @@ public class SongListControllerTest {
 
     private AtomicReference<SongList> createStub_UpdateSongList() {
         AtomicReference<SongList> value = new AtomicReference<>();
-        Mockito.when(songListDao.updateList(any())).then(invocation -> {
+        Mockito.doAnswer(invocation -> {
             value.set(invocation.getArgument(0));
-            return null;
-        });
+            return true;
+        }).when(songListDao).updateList(any(), anyBoolean());
         return value;
     }
 
@@ -412,6 +620,9 @@ public class SongListControllerTest {
         assertEquals(true, songList.get().getIsPrivate());
         assertEquals(SONG_1, songList.get().getSongs().get(0));
         assertEquals(SONG_4, songList.get().getSongs().get(1));
+        Mockito.verify(songListDao).updateList(any(), eq(true));
+        // the owner is checked by the update itself, the list is not read
+        Mockito.verify(songListDao, Mockito.never()).findListById(any());
     }
 
     @Test
@@ -429,8 +640,9 @@ public class SongListControllerTest {
         mvc.perform(put("/playlists/1").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content(UPDATE_SONGLIST_JSON.replace("\"listName\": \"favs1\",","")))
                 .andExpect(status().isNoContent());
 
+        // the name is kept by the update
         assertEquals("user1", songList.get().getOwnerId());
-        assertEquals("list1", songList.get().getListName());
+        assertNull(songList.get().getListName());
         assertEquals(1, songList.get().getListId());
         assertEquals(true, songList.get().getIsPrivate());
         assertEquals(SONG_1, songList.get().getSongs().get(0));
@@ -491,6 +703,7 @@ public class SongListControllerTest {
         setUpSongLists();
         mvc.perform(put("/playlists/1").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content("{}"))
                 .andExpect(status().isNoContent()); // perform no updates on songlist
+        Mockito.verify(songListDao).updateList(any(), eq(false));
     }
 
     @Test
@@ -513,6 +726,8 @@ public class SongListControllerTest {
         setUpSongLists();
         mvc.perform(put("/playlists/1").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_2).content(UPDATE_SONGLIST_JSON))
                 .andExpect(status().isForbidden());
+        // the list is only read to tell a foreign list from a missing one
+        Mockito.verify(songListDao).findListById(1);
     }
 
     // DELETE songlist
@@ -522,7 +737,8 @@ public class SongListControllerTest {
         setUpSongLists();
         mvc.perform(delete("/playlists/1").header(HttpHeaders.AUTHORIZATION, TOKEN_1))
                 .andExpect(status().isNoContent());
-        Mockito.verify(songListDao).deleteList(1);
+        Mockito.verify(songListDao).deleteList(1, "user1");
+        Mockito.verify(songListDao, Mockito.never()).findListById(any());
     }
 
     @Test
@@ -559,4 +775,66 @@ public class SongListControllerTest {
         mvc.perform(delete("/playlists/1").accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isUnauthorized());
     }
+
+    // auth lookups per request
+
+    @Test
+    void authLookups_getAllSongListsByUser() throws Exception {
+        setUpSongLists();
+        mvc.perform(get("/playlists?userId=user1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+        Mockito.verify(helper, Mockito.never()).doesUserIdExist(anyString());
+    }
+
+    @Test
+    void authLookups_getAllSongListsByUser_ForeignOwner() throws Exception {
+        setUpSongLists();
+        mvc.perform(get("/playlists?userId=user2").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+        Mockito.verify(helper, Mockito.times(1)).doesUserIdExist(anyString());
+    }
+
+    @Test
+    void authLookups_getSongList() throws Exception {
+        setUpSongLists();
+        mvc.perform(get("/playlists/1").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isOk());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+    }
+
+    @Test
+    void authLookups_postSongList() throws Exception {
+        createStub_SaveSongList();
+        setUpSongLists();
+        mvc.perform(post("/playlists").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content(POST_SONGLIST_JSON))
+                .andExpect(status().isCreated());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+    }
+
+    @Test
+    void authLookups_updateSongList() throws Exception {
+        setUpSongLists();
+        createStub_UpdateSongList();
+        mvc.perform(put("/playlists/1").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.AUTHORIZATION, TOKEN_1).content(UPDATE_SONGLIST_JSON))
+                .andExpect(status().isNoContent());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+    }
+
+    @Test
+    void authLookups_deleteSongList() throws Exception {
+        setUpSongLists();
+        mvc.perform(delete("/playlists/1").header(HttpHeaders.AUTHORIZATION, TOKEN_1))
+                .andExpect(status().isNoContent());
+        Mockito.verify(helper, Mockito.times(1)).getUserIdForToken(anyString());
+    }
+
+    @Test
+    void authLookups_authTokenMissing() throws Exception {
+        setUpSongLists();
+        mvc.perform(delete("/playlists/1"))
+                .andExpect(status().isUnauthorized());
+        Mockito.verify(helper, Mockito.never()).getUserIdForToken(any());
+    }
 }
@@ -0,0 +1,66 @@
+package s0566430.songsMS.controller;
+
+import org.junit.jupiter.api.Test;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListsXmlRoot;
+import s0566430.songsMS.model.SongsXmlRoot;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlConverterTest {
+
+    private static final Song SONG = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+
+    @Test
+    void toXml_formatted() throws Exception {
+        String xml = new XmlConverter(true).toXml(new SongsXmlRoot(SONG));
+
+        assertTrue(xml.contains("<songs>\n    <song>\n"));
+        assertTrue(xml.contains("<title>Never Gonna Give You Up</title>"));
+    }
+
+    @Test
+    void toXml_compact() throws Exception {
+        XmlConverter converter = new XmlConverter(false);
+        String xml = converter.toXml(new SongsXmlRoot(SONG));
+
+        assertFalse(xml.contains("\n"));
+        assertEquals(new XmlConverter(true).toXml(new SongsXmlRoot(SONG)).replaceAll(">\\s+<", "><").trim(), xml);
+    }
+
+    @Test
+    void toXml_songLists() throws Exception {
+        SongList songList = new SongList("user1", "list1", true);
+        songList.setSongs(List.of(SONG));
+
+        String xml = new XmlConverter(false).toXml(new SongListsXmlRoot(songList));
+
+        assertTrue(xml.contains("<songlists><songlist><isPrivate>true</isPrivate><listName>list1</listName><songs><song>"));
+    }
+
+    @Test
+    void toXml_concurrent() throws Exception {
+        XmlConverter converter = new XmlConverter(false);
+        String expected = converter.toXml(new SongsXmlRoot(SONG));
+        Callable<Boolean> task = () -> {
+            for (int i = 0; i < 200; i++)
+                if (!expected.equals(converter.toXml(new SongsXmlRoot(SONG)))) return false;
+            return true;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<Boolean> result : executor.invokeAll(List.of(task, task, task, task, task, task, task, task)))
+                assertTrue(result.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package s0566430.songsMS.repository;
+
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongList;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringJUnitConfig({HibernateConfig.class, SongDaoImpl.class, SongListDaoImpl.class, IdSequenceMigration.class})
+// the rows inserted with plain SQL bypass the second-level cache, which is shared with the other tests
+@TestPropertySource(locations = "classpath:/h2.properties", properties = {
+        "hibernate.cache.use_second_level_cache=false", "hibernate.cache.use_query_cache=false"})
+class IdSequenceMigrationTest {
+
+    @Autowired
+    private SongDao songDao;
+    @Autowired
+    private SongListDao songListDao;
+    @Autowired
+    private IdSequenceMigration migration;
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM songlists_songs");
+        jdbcTemplate.update("DELETE FROM songlists");
+        jdbcTemplate.update("DELETE FROM songs");
+    }
+
+    @Test
+    void migrate_movesSequencesPastExistingIds() {
+        // rows with ids assigned by the increment generator
+        jdbcTemplate.update("INSERT INTO songs (songid, title, released) SELECT x, 'title' || x, 1987 FROM SYSTEM_RANGE(1, 5000)");
+        jdbcTemplate.update("INSERT INTO songlists (listId, ownerId, listName, isPrivate) VALUES (7000, 'user1', 'list', false)");
+
+        migration.migrate();
+
+        assertTrue(songDao.saveSong(new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987)) > 5000);
+        assertTrue(songListDao.saveList(new SongList("user1", "new list", false)) > 7000);
+    }
+
+    @Test
+    void migrate_repeatedRunsKeepIdsUnique() {
+        Set<Integer> ids = new HashSet<>();
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 120; i++) songs.add(new Song("Song " + i, "Rick Astley", "RCA", 1987));
+        ids.addAll(songDao.saveSongs(songs));
+
+        migration.migrate();
+        migration.migrate();
+        ids.add(songDao.saveSong(new Song("Together Forever", "Rick Astley", "RCA", 1988)));
+
+        assertEquals(121, ids.size());
+    }
+
+    @Test
+    void lockStatement() {
+        assertEquals("SELECT pg_advisory_xact_lock(" + IdSequenceMigration.LOCK_KEY + ")",
+                IdSequenceMigration.lockStatement(new PostgreSQL95Dialect()));
+        assertNull(IdSequenceMigration.lockStatement(new H2Dialect()));
+    }
+}
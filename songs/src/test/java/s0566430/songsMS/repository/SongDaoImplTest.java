@@ -0,0 +1,267 @@
+package s0566430.songsMS.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringJUnitConfig({HibernateConfig.class, SongDaoImpl.class})
+@TestPropertySource(locations = "classpath:/h2.properties")
+class SongDaoImplTest {
+
+    @Autowired
+    private SongDao dao;
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        dao.findAllSongs().forEach(song -> dao.deleteSong(song.getId()));
+        // ids can be handed out again after another test context has recreated the schema
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    private int saveSong(String title) {
+        return dao.saveSong(new Song(title, "Rick Astley", "RCA", 1987));
+    }
+
+    @Test
+    void findSong_repeatedReadsHitCache() {
+        int id = saveSong("Never Gonna Give You Up");
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+
+        assertEquals("Never Gonna Give You Up", dao.findSong(id).getTitle());
+        long statements = statistics.getPrepareStatementCount();
+        for (int i = 0; i < 10; i++)
+            assertEquals("Never Gonna Give You Up", dao.findSong(id).getTitle());
+
+        assertEquals(1, statements);
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertEquals(10, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    void findAllSongs_repeatedReadsHitQueryCache() {
+        saveSong("Never Gonna Give You Up");
+        saveSong("Together Forever");
+        statistics.clear();
+
+        assertEquals(2, dao.findAllSongs().size());
+        long statements = statistics.getPrepareStatementCount();
+        for (int i = 0; i < 10; i++)
+            assertEquals(2, dao.findAllSongs().size());
+
+        assertEquals(1, statements);
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertEquals(10, statistics.getQueryCacheHitCount());
+    }
+
+    @Test
+    void saveSong_invalidatesQueryCache() {
+        saveSong("Never Gonna Give You Up");
+        assertEquals(1, dao.findAllSongs().size());
+
+        saveSong("Together Forever");
+        assertEquals(2, dao.findAllSongs().size());
+    }
+
+    @Test
+    void updateSong_invalidatesCache() {
+        int id = saveSong("Never Gonna Give You Up");
+        dao.findSong(id);
+        dao.findAllSongs();
+
+        Song song = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song.setId(id);
+        dao.updateSong(song);
+
+        assertEquals("Together Forever", dao.findSong(id).getTitle());
+        assertEquals("Together Forever", dao.findAllSongs().get(0).getTitle());
+    }
+
+    @Test
+    void deleteSong_invalidatesCache() {
+        int id = saveSong("Never Gonna Give You Up");
+        dao.findSong(id);
+        dao.findAllSongs();
+
+        dao.deleteSong(id);
+
+        assertNull(dao.findSong(id));
+        List<Song> songs = dao.findAllSongs();
+        assertTrue(songs.isEmpty());
+    }
+
+    @Test
+    void findSongsByIds_singleQuery() {
+        int id1 = saveSong("Never Gonna Give You Up");
+        int id2 = saveSong("Together Forever");
+        saveSong("Whenever You Need Somebody");
+        statistics.clear();
+
+        List<Song> songs = dao.findSongsByIds(Set.of(id1, id2, 4711));
+
+        assertEquals(2, songs.size());
+        assertTrue(songs.stream().anyMatch(song -> song.getId() == id1));
+        assertTrue(songs.stream().anyMatch(song -> song.getId() == id2));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void saveSongs_jdbcBatches() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 120; i++) songs.add(new Song("Song " + i, "Rick Astley", "RCA", 1987));
+
+        List<Integer> ids = dao.saveSongs(songs);
+
+        // one statement per batch of 50 inserts and one sequence call per block of 50 ids
+        assertEquals(6, statistics.getPrepareStatementCount());
+        assertEquals(120, statistics.getEntityInsertCount());
+        assertEquals(120, ids.size());
+        assertEquals("Song 119", dao.findSong(ids.get(119)).getTitle());
+    }
+
+    @Test
+    void findSongsByIds_empty() {
+        saveSong("Never Gonna Give You Up");
+        statistics.clear();
+
+        assertTrue(dao.findSongsByIds(Collections.emptySet()).isEmpty());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void doAllSongsExist() {
+        int id = saveSong("Never Gonna Give You Up");
+        Song song = dao.findSong(id);
+        Song changed = new Song("Together Forever", "Rick Astley", "RCA", 1987);
+        changed.setId(id);
+        Song unknown = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+        unknown.setId(id + 1);
+
+        statistics.clear();
+        assertTrue(dao.doAllSongsExist(List.of(song, song)));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertTrue(dao.doAllSongsExist(Collections.emptyList()));
+        assertFalse(dao.doAllSongsExist(List.of(song, changed)));
+        assertFalse(dao.doAllSongsExist(List.of(song, unknown)));
+    }
+
+    @Test
+    void findSongs_offsetPages() {
+        int id1 = saveSong("Never Gonna Give You Up");
+        int id2 = saveSong("Together Forever");
+        int id3 = saveSong("Whenever You Need Somebody");
+
+        assertEquals(List.of(id1, id2), ids(dao.findSongs(0, 2)));
+        assertEquals(List.of(id3), ids(dao.findSongs(2, 2)));
+        assertTrue(dao.findSongs(3, 2).isEmpty());
+    }
+
+    @Test
+    void findSongsAfter_keysetPages() {
+        int id1 = saveSong("Never Gonna Give You Up");
+        int id2 = saveSong("Together Forever");
+        int id3 = saveSong("Whenever You Need Somebody");
+
+        assertEquals(List.of(id1, id2), ids(dao.findSongsAfter(0, 2)));
+        assertEquals(List.of(id3), ids(dao.findSongsAfter(id2, 2)));
+        assertTrue(dao.findSongsAfter(id3, 2).isEmpty());
+    }
+
+    @Test
+    void streamAllSongs_readsAllSongsInOrder() {
+        List<Integer> saved = new ArrayList<>();
+        for (int i = 0; i < QueryStreams.FETCH_SIZE + 10; i++)
+            saved.add(saveSong("Never Gonna Give You Up " + i));
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+
+        List<Integer> streamed = new ArrayList<>();
+        dao.streamAllSongs(song -> streamed.add(song.getId()));
+
+        assertEquals(saved, streamed);
+        assertEquals(0, statistics.getSecondLevelCachePutCount());
+    }
+
+    @Test
+    void streamAllSongs_consumerExceptionPassedOn() {
+        saveSong("Never Gonna Give You Up");
+
+        assertThrows(IllegalStateException.class, () -> dao.streamAllSongs(song -> {
+            throw new IllegalStateException();
+        }));
+    }
+
+    @Test
+    void updateSong_incrementsVersion() {
+        int id = saveSong("Never Gonna Give You Up");
+        Song saved = dao.findSong(id);
+        assertEquals(0, saved.getVersion());
+        assertTrue(saved.getModifiedAt() > 0);
+
+        Song song = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song.setId(id);
+        dao.updateSong(song);
+        dao.updateSong(song);
+
+        Song updated = dao.findSong(id);
+        assertEquals(2, updated.getVersion());
+        assertTrue(updated.getModifiedAt() >= saved.getModifiedAt());
+    }
+
+    @Test
+    void updateSong_singleStatement() {
+        int id = saveSong("Never Gonna Give You Up");
+        Song song = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song.setId(id);
+        statistics.clear();
+
+        dao.updateSong(song);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void updateSong_unknownId() {
+        Song song = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song.setId(4711);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> dao.updateSong(song));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void deleteSong_singleStatement() {
+        int id = saveSong("Never Gonna Give You Up");
+        statistics.clear();
+
+        dao.deleteSong(id);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> dao.deleteSong(id));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    private static List<Integer> ids(List<Song> songs) {
+        return songs.stream().map(Song::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,245 @@
+package s0566430.songsMS.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.Song;
+import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
+
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringJUnitConfig({HibernateConfig.class, SongListDaoImpl.class, SongDaoImpl.class})
+@TestPropertySource(locations = "classpath:/h2.properties")
+class SongListDaoImplTest {
+
+    private static final String USER_ID_1 = "user1";
+    private static final String USER_ID_2 = "user2";
+
+    @Autowired
+    private SongListDao dao;
+    @Autowired
+    private SongDao songDao;
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private Statistics statistics;
+
+    private Song song;
+
+    @BeforeEach
+    void setUp() {
+        for (String userId : List.of(USER_ID_1, USER_ID_2))
+            dao.findListsWithSongsByUserId(userId, true).forEach(list -> dao.deleteList(list.getListId(), userId));
+        songDao.findAllSongs().forEach(song -> songDao.deleteSong(song.getId()));
+        song = new Song("Never Gonna Give You Up", "Rick Astley", "RCA", 1987);
+        song.setId(songDao.saveSong(song));
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    private int saveList(String ownerId, String name, boolean isPrivate) {
+        SongList songList = new SongList(ownerId, name, isPrivate);
+        songList.setSongs(List.of(song));
+        return dao.saveList(songList);
+    }
+
+    @Test
+    void streamListsByUserId() {
+        int private1 = saveList(USER_ID_1, "list1", true);
+        int public1 = saveList(USER_ID_1, "list2", false);
+        saveList(USER_ID_2, "list3", false);
+
+        List<SongList> all = new ArrayList<>();
+        dao.streamListsByUserId(USER_ID_1, true, all::add);
+        assertEquals(2, all.size());
+        assertEquals(private1, all.get(0).getListId());
+        assertEquals(public1, all.get(1).getListId());
+        assertEquals(List.of(song), all.get(0).getSongs());
+
+        List<SongList> publicOnly = new ArrayList<>();
+        dao.streamListsByUserId(USER_ID_1, false, publicOnly::add);
+        assertEquals(1, publicOnly.size());
+        assertEquals("list2", publicOnly.get(0).getListName());
+    }
+
+    @Test
+    void streamListsByUserId_moreThanOneFetch() {
+        List<Integer> saved = new ArrayList<>();
+        for (int i = 0; i < QueryStreams.FETCH_SIZE + 10; i++)
+            saved.add(saveList(USER_ID_1, "list" + i, false));
+
+        List<Integer> streamed = new ArrayList<>();
+        dao.streamListsByUserId(USER_ID_1, true, list -> {
+            assertEquals(1, list.getSongs().size());
+            streamed.add(list.getListId());
+        });
+
+        assertEquals(saved, streamed);
+    }
+
+    @Test
+    void updateList_replacesSongs() {
+        int listId = saveList(USER_ID_1, "list1", false);
+        Song song2 = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song2.setId(songDao.saveSong(song2));
+        dao.findListById(listId);
+        statistics.clear();
+
+        SongList update = new SongList(USER_ID_1, "renamed", true);
+        update.setListId(listId);
+        update.setSongs(List.of(song2, song));
+        assertTrue(dao.updateList(update, true));
+
+        // update of the list and delete of its songs, the batch inserting the songs is sent past the statistics
+        assertEquals(2, statistics.getPrepareStatementCount());
+        SongList updated = dao.findListById(listId);
+        assertEquals("renamed", updated.getListName());
+        assertTrue(updated.getIsPrivate());
+        assertEquals(1, updated.getVersion());
+        assertEquals(2, updated.getSongs().size());
+        assertTrue(updated.getSongs().contains(song2));
+
+        update.setSongs(List.of(song2));
+        assertTrue(dao.updateList(update, true));
+        assertEquals(List.of(song2), dao.findListById(listId).getSongs());
+        update.setSongs(List.of());
+        assertTrue(dao.updateList(update, true));
+        assertEquals(List.of(), dao.findListById(listId).getSongs());
+    }
+
+    @Test
+    void updateList_keepsMissingProperties() {
+        int listId = saveList(USER_ID_1, "list1", true);
+        statistics.clear();
+
+        SongList update = new SongList(USER_ID_1, null, false);
+        update.setListId(listId);
+        update.setSongs(null);
+        assertTrue(dao.updateList(update, false));
+
+        // only the update of the list
+        assertEquals(1, statistics.getPrepareStatementCount());
+        SongList updated = dao.findListById(listId);
+        assertEquals("list1", updated.getListName());
+        assertTrue(updated.getIsPrivate());
+        assertEquals(List.of(song), updated.getSongs());
+        assertEquals(1, updated.getVersion());
+    }
+
+    @Test
+    void updateList_evictsCachedSongs() {
+        int listId = saveList(USER_ID_1, "list1", false);
+        Song song2 = new Song("Together Forever", "Rick Astley", "RCA", 1988);
+        song2.setId(songDao.saveSong(song2));
+        dao.findListById(listId);
+        dao.findListById(listId);
+
+        SongList update = new SongList(USER_ID_1, "list1", false);
+        update.setListId(listId);
+        update.setSongs(List.of(song2));
+        dao.updateList(update, true);
+
+        assertEquals(List.of(song2), dao.findListById(listId).getSongs());
+        statistics.clear();
+        assertEquals(List.of(song2), dao.findListById(listId).getSongs());
+        // read from the second-level cache
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void updateList_unknownId() {
+        SongList update = new SongList(USER_ID_1, "renamed", true);
+        update.setListId(4711);
+
+        assertFalse(dao.updateList(update, true));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void updateList_foreignOwner() {
+        int listId = saveList(USER_ID_1, "list1", false);
+        statistics.clear();
+
+        SongList update = new SongList(USER_ID_2, "renamed", true);
+        update.setListId(listId);
+        update.setSongs(List.of());
+        assertFalse(dao.updateList(update, true));
+
+        // the owner is checked by the update, the songs are not touched
+        assertEquals(1, statistics.getPrepareStatementCount());
+        SongList unchanged = dao.findListById(listId);
+        assertEquals("list1", unchanged.getListName());
+        assertEquals(0, unchanged.getVersion());
+        assertEquals(List.of(song), unchanged.getSongs());
+    }
+
+    @Test
+    void deleteList_withoutReadingList() {
+        int listId = saveList(USER_ID_1, "list1", false);
+        statistics.clear();
+
+        assertFalse(dao.deleteList(listId, USER_ID_2));
+        assertTrue(dao.deleteList(listId, USER_ID_1));
+
+        // the deletes of the foreign owner and of the owner, each of the join table rows and of the list
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertNull(dao.findListById(listId));
+        assertFalse(dao.deleteList(listId, USER_ID_1));
+    }
+
+    @Test
+    void deleteSong_partOfList() {
+        int listId = saveList(USER_ID_1, "list1", false);
+
+        assertThrows(PersistenceException.class, () -> songDao.deleteSong(song.getId()));
+        assertEquals(List.of(song), dao.findListById(listId).getSongs());
+    }
+
+    private List<Integer> saveLists(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            ids.add(saveList(USER_ID_1, "list" + i, i % 2 == 0));
+        sessionFactory.getCache().evictAllRegions();
+        statistics.clear();
+        return ids;
+    }
+
+    @Test
+    void findListSummariesByUserId_singleQuery() {
+        List<Integer> ids = saveLists(120);
+
+        List<SongListSummary> summaries = dao.findListSummariesByUserId(USER_ID_1, true);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(ids, summaries.stream().map(SongListSummary::getListId).collect(Collectors.toList()));
+        assertEquals("list0", summaries.get(0).getListName());
+        assertTrue(summaries.get(0).getIsPrivate());
+        assertEquals(1, summaries.get(0).getSongCount());
+        assertEquals(60, dao.findListSummariesByUserId(USER_ID_1, false).size());
+    }
+
+    @Test
+    void findListsWithSongsByUserId_singleQuery() {
+        List<Integer> ids = saveLists(120);
+
+        List<SongList> songLists = dao.findListsWithSongsByUserId(USER_ID_1, true);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(ids, songLists.stream().map(SongList::getListId).collect(Collectors.toList()));
+        for (SongList songList : songLists)
+            assertEquals(List.of(song), songList.getSongs());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,56 @@
+package s0566430.songsMS.repository;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import s0566430.songsMS.HibernateConfig;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the lookups of {@link SongListOwnerQueryTest} among a million lists of 100,000 users, in a database of its own.
+ * Generating the lists and measuring wall-clock time takes a while, so it only runs with <code>mvn test -Pperformance</code>.
+ */
+@Tag("performance")
+@SpringJUnitConfig({HibernateConfig.class, SongListDaoImpl.class})
+@TestPropertySource(locations = "classpath:/h2.properties", properties = {
+        "jdbc.url=jdbc:h2:mem:songlists-owners-latency;DB_CLOSE_DELAY=-1",
+        "hibernate.cache.use_second_level_cache=false", "hibernate.cache.use_query_cache=false"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SongListOwnerLatencyTest {
+
+    private static final int LISTS = 1_000_000;
+    private static final int USERS = 100_000;
+
+    @Autowired
+    private SongListDao dao;
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    void setUp() {
+        SongListOwnerQueryTest.insertLists(dataSource, LISTS, USERS);
+    }
+
+    @Test
+    void ownerQueries_latency() {
+        for (int i = 0; i < 200; i++) dao.findListSummariesByUserId("user" + i, false);
+
+        int lookups = 1000;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            dao.findListSummariesByUserId("user" + (i * 97 % USERS), false);
+            dao.findListsWithSongsByUserId("user" + (i * 89 % USERS), true);
+        }
+        double millisPerLookup = (System.nanoTime() - start) / 1e6 / (2 * lookups);
+
+        // a scan of the table takes several hundred milliseconds
+        assertTrue(millisPerLookup < 20, millisPerLookup + " ms per lookup");
+    }
+}
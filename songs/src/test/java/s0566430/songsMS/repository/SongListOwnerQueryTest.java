@@ -0,0 +1,94 @@
+package s0566430.songsMS.repository;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import s0566430.songsMS.HibernateConfig;
+import s0566430.songsMS.model.SongList;
+import s0566430.songsMS.model.SongListSummary;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Looks up the lists of users among 20,000 lists of 2,000 users, in a database of its own.
+ * Without the index on (ownerId, isPrivate) every lookup scans the whole table.
+ * The plans are checked for the statements Hibernate generates for the lookups that serve <code>GET /playlists</code>,
+ * the latency on a million lists is measured by {@link SongListOwnerLatencyTest}.
+ */
+@SpringJUnitConfig({HibernateConfig.class, SongListDaoImpl.class})
+@TestPropertySource(locations = "classpath:/h2.properties", properties = {
+        "jdbc.url=jdbc:h2:mem:songlists-owners;DB_CLOSE_DELAY=-1",
+        "hibernate.cache.use_second_level_cache=false", "hibernate.cache.use_query_cache=false"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SongListOwnerQueryTest {
+
+    private static final int LISTS = 20_000;
+    private static final int USERS = 2_000;
+
+    @Autowired
+    private SongListDao dao;
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void setUp() {
+        jdbcTemplate = insertLists(dataSource, LISTS, USERS);
+    }
+
+    /** inserts the lists of users <code>user0</code> to <code>user{users - 1}</code>, half of them private */
+    static JdbcTemplate insertLists(DataSource dataSource, int lists, int users) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO songlists (listId, ownerId, listName, isPrivate) " +
+                "SELECT x, 'user' || MOD(x, ?), 'list' || x, MOD(x / ?, 2) = 0 FROM SYSTEM_RANGE(1, ?)", users, users, lists);
+        jdbcTemplate.execute("ANALYZE");
+        return jdbcTemplate;
+    }
+
+    @Test
+    void ownerQueries_useIndex() {
+        // records the statements Hibernate actually sends
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        try {
+            for (boolean includePrivate : new boolean[]{true, false}) {
+                dao.findListSummariesByUserId("user42", includePrivate);
+                dao.findListsWithSongsByUserId("user42", includePrivate);
+                dao.streamListsByUserId("user42", includePrivate, songList -> {});
+            }
+            List<String> statements = jdbcTemplate.queryForList("SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS " +
+                    "WHERE LOWER(SQL_STATEMENT) LIKE '%from songlists %'", String.class);
+            assertTrue(statements.size() >= 4, statements.toString());
+
+            for (String statement : statements) {
+                String plan = jdbcTemplate.queryForObject("EXPLAIN " + statement, String.class, "user42");
+                assertTrue(plan.toUpperCase().contains("SONGLISTS_OWNER_IDX"), plan);
+                assertTrue(plan.toUpperCase().contains("SONGLISTS_SONGS_LIST_IDX"), plan);
+                // neither the lists nor, for the joined or counted songs, the join table are scanned
+                assertFalse(plan.contains("tableScan"), plan);
+            }
+        } finally {
+            jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        }
+    }
+
+    @Test
+    void ownerQueries_results() {
+        List<SongListSummary> all = dao.findListSummariesByUserId("user42", true);
+        List<SongList> publicOnly = dao.findListsWithSongsByUserId("user42", false);
+
+        assertEquals(LISTS / USERS, all.size());
+        assertEquals(LISTS / USERS / 2, publicOnly.size());
+        assertTrue(publicOnly.stream().noneMatch(SongList::getIsPrivate));
+        assertEquals(42, all.get(0).getListId());
+        // bound, not concatenated
+        assertTrue(dao.findListSummariesByUserId("user42' OR '1'='1", true).isEmpty());
+    }
+}